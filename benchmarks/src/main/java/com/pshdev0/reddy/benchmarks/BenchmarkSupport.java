@@ -0,0 +1,64 @@
+package com.pshdev0.reddy.benchmarks;
+
+import com.pshdev0.reddy.CacheBackend;
+import com.pshdev0.reddy.Network;
+import com.pshdev0.reddy.RedisCacheBackend;
+import com.pshdev0.reddy.ShardedCacheBackend;
+import org.web3j.protocol.Web3j;
+import redis.clients.jedis.HostAndPort;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Shared setup for the benchmarks, configured with system properties passed to the forked JVMs with -jvmArgs:
+ * <ul>
+ *     <li>reddy.redis=host:port to use a real Redis rather than the in-memory stand-in, or a comma-separated list of
+ *     standalone nodes to shard over with a ShardedCacheBackend</li>
+ *     <li>reddy.redisCluster=host:port[,host:port...] to use a Redis Cluster</li>
+ *     <li>reddy.stubLatencyMicros to add simulated RPC latency to the stub node</li>
+ * </ul>
+ */
+public class BenchmarkSupport {
+
+    public static final String SOURCE = "bench";
+
+    private BenchmarkSupport() { }
+
+    /**
+     * Point Network at a fresh backend and a benchmark-only key prefix
+     */
+    public static CacheBackend useBackend() {
+        Network.setRedisKeyPrefix("reddy-bench");
+        Network.setDefaultMillis(0);
+
+        CacheBackend backend;
+        var redis = System.getProperty("reddy.redis");
+        var redisCluster = System.getProperty("reddy.redisCluster");
+        if (redisCluster != null && !redisCluster.isBlank()) {
+            backend = new RedisCacheBackend(new HashSet<>(parseNodes(redisCluster)), RedisCacheBackend.DEFAULT_POOL_SIZE,
+                    RedisCacheBackend.DEFAULT_CONNECTION_TIMEOUT_MILLIS, RedisCacheBackend.DEFAULT_SOCKET_TIMEOUT_MILLIS);
+        }
+        else if (redis == null || redis.isBlank()) {
+            backend = new InMemoryCacheBackend();
+        }
+        else if (redis.contains(",")) {
+            backend = new ShardedCacheBackend(parseNodes(redis));
+        }
+        else {
+            var hostPort = redis.split(":");
+            backend = new RedisCacheBackend(hostPort[0], hostPort.length > 1 ? Integer.parseInt(hostPort[1]) : 6379);
+        }
+        Network.setCacheBackend(backend);
+        return backend;
+    }
+
+    private static List<HostAndPort> parseNodes(String nodes) {
+        return Arrays.stream(nodes.split(",")).map(String::trim).map(HostAndPort::from).toList();
+    }
+
+    public static Web3j stubWeb3j() {
+        return Web3j.build(new StubWeb3jService(150, Long.getLong("reddy.stubLatencyMicros", 0)));
+    }
+}
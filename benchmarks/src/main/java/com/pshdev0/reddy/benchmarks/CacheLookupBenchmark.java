@@ -0,0 +1,98 @@
+package com.pshdev0.reddy.benchmarks;
+
+import com.pshdev0.reddy.CacheBackend;
+import com.pshdev0.reddy.CacheMetrics;
+import com.pshdev0.reddy.Network;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.methods.response.Transaction;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-threaded latency of getCachedOrComputeAndWait. Sample time mode reports p50/p99/p999, which is what the
+ * round trip and key derivation work should move; run with -jvmArgs -Dreddy.redis=localhost:6379 to include real
+ * Redis round trips.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CacheLookupBenchmark {
+
+    private static final long MISS_TTL_MILLIS = 60_000;
+
+    private CacheBackend backend;
+    private Web3j web3j;
+    private String cachedHash;
+    private long missCounter;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        backend = BenchmarkSupport.useBackend();
+        web3j = BenchmarkSupport.stubWeb3j();
+        Network.setCacheMetrics(CacheMetrics.NOOP);
+        Network.enableLocalCache("getTxByHashLocal", 1024);
+
+        cachedHash = Fixtures.txHash(Fixtures.LATEST_BLOCK, 1);
+        lookup("getTxByHash", cachedHash);
+        lookup("getTxByHashLocal", cachedHash);
+    }
+
+    @TearDown(Level.Iteration)
+    public void clearMisses() {
+        if (backend instanceof InMemoryCacheBackend inMemory) {
+            inMemory.clear();
+            lookup("getTxByHash", cachedHash);
+            lookup("getTxByHashLocal", cachedHash);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Network.disableLocalCache("getTxByHashLocal");
+        web3j.shutdown();
+    }
+
+    private Transaction lookup(String method, String hash) {
+        return Network.getCachedOrComputeAndWait(() -> web3j.ethGetTransactionByHash(hash).send().getTransaction().orElse(null),
+                Transaction.class, 0, MISS_TTL_MILLIS, BenchmarkSupport.SOURCE, method, 0, hash);
+    }
+
+    /**
+     * Hit served by the backend: key derivation, one GET and a decode
+     */
+    @Benchmark
+    public Transaction backendHit() {
+        return lookup("getTxByHash", cachedHash);
+    }
+
+    /**
+     * Hit served by the on-heap cache in front of the backend
+     */
+    @Benchmark
+    public Transaction localHit() {
+        return lookup("getTxByHashLocal", cachedHash);
+    }
+
+    /**
+     * Miss: a GET, the stubbed RPC call and an encode and SET of the result
+     */
+    @Benchmark
+    public Transaction miss() {
+        return lookup("getTxByHash", Fixtures.unknownTxHash("miss", missCounter++));
+    }
+}
@@ -0,0 +1,111 @@
+package com.pshdev0.reddy.benchmarks;
+
+import com.pshdev0.reddy.CacheCodec;
+import com.pshdev0.reddy.JacksonCodec;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.methods.response.EthBlock;
+import org.web3j.protocol.core.methods.response.Transaction;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trips of the three types cached most often, through each built-in codec. The encodedSizes benchmark reports
+ * each type's encoded size as a secondary result, so the size/time trade off between codecs can be read off one run.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodecBenchmark {
+
+    @Param({"JSON", "COMPACT_JSON_DEFLATE"})
+    public String codecName;
+
+    private CacheCodec codec;
+    private EthBlock.Block block;
+    private TransactionReceipt receipt;
+    private Transaction transaction;
+    private byte[] blockBytes;
+    private byte[] receiptBytes;
+    private byte[] transactionBytes;
+
+    @Setup
+    public void setup() throws IOException {
+        codec = codecName.equals("JSON") ? JacksonCodec.JSON : JacksonCodec.COMPACT_JSON_DEFLATE;
+
+        var web3j = BenchmarkSupport.stubWeb3j();
+        block = web3j.ethGetBlockByNumber(DefaultBlockParameter.valueOf(BigInteger.valueOf(Fixtures.LATEST_BLOCK)), true).send().getBlock();
+        var hash = Fixtures.txHash(Fixtures.LATEST_BLOCK, 0);
+        transaction = web3j.ethGetTransactionByHash(hash).send().getTransaction().orElseThrow();
+        receipt = web3j.ethGetTransactionReceipt(hash).send().getTransactionReceipt().orElseThrow();
+
+        blockBytes = codec.encode(block);
+        receiptBytes = codec.encode(receipt);
+        transactionBytes = codec.encode(transaction);
+    }
+
+    /**
+     * Encoded sizes in bytes, reported by JMH as they stand at the end of each iteration
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class EncodedSizes {
+        public long blockBytes;
+        public long receiptBytes;
+        public long transactionBytes;
+    }
+
+    @Benchmark
+    public void encodedSizes(EncodedSizes sizes) throws IOException {
+        sizes.blockBytes = codec.encode(block).length;
+        sizes.receiptBytes = codec.encode(receipt).length;
+        sizes.transactionBytes = codec.encode(transaction).length;
+    }
+
+    @Benchmark
+    public byte[] encodeBlock() throws IOException {
+        return codec.encode(block);
+    }
+
+    @Benchmark
+    public EthBlock.Block decodeBlock() throws IOException {
+        return codec.decode(blockBytes, 0, blockBytes.length, EthBlock.Block.class);
+    }
+
+    @Benchmark
+    public byte[] encodeReceipt() throws IOException {
+        return codec.encode(receipt);
+    }
+
+    @Benchmark
+    public TransactionReceipt decodeReceipt() throws IOException {
+        return codec.decode(receiptBytes, 0, receiptBytes.length, TransactionReceipt.class);
+    }
+
+    @Benchmark
+    public byte[] encodeTransaction() throws IOException {
+        return codec.encode(transaction);
+    }
+
+    @Benchmark
+    public Transaction decodeTransaction() throws IOException {
+        return codec.decode(transactionBytes, 0, transactionBytes.length, Transaction.class);
+    }
+}
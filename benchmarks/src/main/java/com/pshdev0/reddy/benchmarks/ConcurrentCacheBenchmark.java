@@ -0,0 +1,94 @@
+package com.pshdev0.reddy.benchmarks;
+
+import com.pshdev0.reddy.CacheMetrics;
+import com.pshdev0.reddy.MetricsRegistry;
+import com.pshdev0.reddy.Network;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.methods.response.Transaction;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput of getCachedOrComputeAndWait with many threads sharing one backend, Web3j client and metrics registry.
+ * Change the thread count with -t to see how it scales.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class ConcurrentCacheBenchmark {
+
+    private static final int HOT_KEYS = 1024;
+    private static final long TTL_MILLIS = 60_000;
+
+    private Web3j web3j;
+    private String[] hotHashes;
+    private final AtomicLong missCounter = new AtomicLong();
+
+    @Setup
+    public void setup() {
+        BenchmarkSupport.useBackend();
+        web3j = BenchmarkSupport.stubWeb3j();
+        // keep the default metrics registry, contention on it is part of what is measured here
+        Network.setCacheMetrics(new MetricsRegistry());
+
+        hotHashes = new String[HOT_KEYS];
+        for (int i = 0; i < HOT_KEYS; i++) {
+            hotHashes[i] = Fixtures.txHash(Fixtures.LATEST_BLOCK, i);
+            lookup(hotHashes[i]);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        Network.setCacheMetrics(CacheMetrics.NOOP);
+        web3j.shutdown();
+    }
+
+    private Transaction lookup(String hash) {
+        return Network.getCachedOrComputeAndWait(() -> web3j.ethGetTransactionByHash(hash).send().getTransaction().orElse(null),
+                Transaction.class, 0, TTL_MILLIS, BenchmarkSupport.SOURCE, "getTxByHash", 0, hash);
+    }
+
+    @Benchmark
+    public Transaction hits() {
+        return lookup(hotHashes[ThreadLocalRandom.current().nextInt(HOT_KEYS)]);
+    }
+
+    /**
+     * 90% hits on the hot keys, 10% misses on new keys
+     */
+    @Benchmark
+    public Transaction mixed() {
+        var random = ThreadLocalRandom.current();
+        if (random.nextInt(10) == 0) {
+            return lookup(Fixtures.unknownTxHash("mixed", missCounter.incrementAndGet()));
+        }
+        return lookup(hotHashes[random.nextInt(HOT_KEYS)]);
+    }
+
+    /**
+     * Every thread asks for the same new key at about the same time, so all but one should wait on the single flight
+     */
+    @Benchmark
+    public Transaction contendedMiss() {
+        return lookup(Fixtures.unknownTxHash("contended", missCounter.incrementAndGet() / 8));
+    }
+}
@@ -0,0 +1,157 @@
+package com.pshdev0.reddy.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.pshdev0.reddy.Utils;
+
+import java.util.Random;
+
+/**
+ * Deterministic, mainnet-shaped JSON-RPC results. Hex fields are random rather than zero-filled so that compressing
+ * codecs are measured on realistic entropy.
+ */
+public class Fixtures {
+
+    public static final long LATEST_BLOCK = 19_000_000;
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private Fixtures() { }
+
+    private static String hex(Random random, int bytes) {
+        var data = new byte[bytes];
+        random.nextBytes(data);
+        return "0x" + Utils.bytesToHex(data);
+    }
+
+    private static String quantity(long value) {
+        return "0x" + Long.toHexString(value);
+    }
+
+    public static String txHash(long blockNumber, int index) {
+        return hex(new Random(blockNumber * 1_000 + index), 32);
+    }
+
+    /**
+     * @return a transaction hash that no fixture block contains, different for every n
+     */
+    public static String unknownTxHash(String series, long n) {
+        return "0x" + Utils.getKeccak256Hash(series + ":" + n);
+    }
+
+    public static String blockHash(long blockNumber) {
+        return hex(new Random(-blockNumber), 32);
+    }
+
+    /**
+     * @return a transaction, deterministic for its hash
+     */
+    public static ObjectNode transaction(String hash, long blockNumber, int index) {
+        var random = new Random(hash.hashCode());
+        var tx = mapper.createObjectNode();
+        tx.put("blockHash", blockHash(blockNumber));
+        tx.put("blockNumber", quantity(blockNumber));
+        tx.put("chainId", "0x1");
+        tx.put("from", hex(random, 20));
+        tx.put("gas", quantity(21_000 + random.nextInt(300_000)));
+        tx.put("gasPrice", quantity(20_000_000_000L + random.nextInt(1_000_000_000)));
+        tx.put("maxFeePerGas", quantity(30_000_000_000L + random.nextInt(1_000_000_000)));
+        tx.put("maxPriorityFeePerGas", quantity(100_000_000 + random.nextInt(100_000_000)));
+        tx.put("hash", hash);
+        // roughly half of mainnet transactions are contract calls with calldata
+        tx.put("input", random.nextBoolean() ? "0x" : hex(random, 4 + 32 * random.nextInt(6)));
+        tx.put("nonce", quantity(random.nextInt(100_000)));
+        tx.put("to", hex(random, 20));
+        tx.put("transactionIndex", quantity(index));
+        tx.put("value", quantity(Math.abs(random.nextLong())));
+        tx.put("type", "0x2");
+        tx.putArray("accessList");
+        tx.put("v", "0x1");
+        tx.put("r", hex(random, 32));
+        tx.put("s", hex(random, 32));
+        return tx;
+    }
+
+    /**
+     * @return the receipt of the transaction, with 0 to 3 logs
+     */
+    public static ObjectNode receipt(String hash, long blockNumber, int index) {
+        var random = new Random(~hash.hashCode());
+        var receipt = mapper.createObjectNode();
+        receipt.put("blockHash", blockHash(blockNumber));
+        receipt.put("blockNumber", quantity(blockNumber));
+        receipt.putNull("contractAddress");
+        receipt.put("cumulativeGasUsed", quantity(random.nextInt(30_000_000)));
+        receipt.put("effectiveGasPrice", quantity(20_000_000_000L + random.nextInt(1_000_000_000)));
+        receipt.put("from", hex(random, 20));
+        receipt.put("gasUsed", quantity(21_000 + random.nextInt(300_000)));
+
+        var logs = receipt.putArray("logs");
+        var logCount = random.nextInt(4);
+        for (int i = 0; i < logCount; i++) {
+            var log = logs.addObject();
+            log.put("address", hex(random, 20));
+            var topics = log.putArray("topics");
+            for (int t = 0; t < 3; t++) {
+                topics.add(hex(random, 32));
+            }
+            log.put("data", hex(random, 32));
+            log.put("blockNumber", quantity(blockNumber));
+            log.put("transactionHash", hash);
+            log.put("transactionIndex", quantity(index));
+            log.put("blockHash", blockHash(blockNumber));
+            log.put("logIndex", quantity(i));
+            log.put("removed", false);
+        }
+
+        receipt.put("logsBloom", hex(random, 256));
+        receipt.put("status", "0x1");
+        receipt.put("to", hex(random, 20));
+        receipt.put("transactionHash", hash);
+        receipt.put("transactionIndex", quantity(index));
+        receipt.put("type", "0x2");
+        return receipt;
+    }
+
+    /**
+     * @param fullTransactions true for transaction objects, false for transaction hashes, as in eth_getBlockByNumber
+     */
+    public static ObjectNode block(long blockNumber, int transactionCount, boolean fullTransactions) {
+        var random = new Random(blockNumber);
+        var block = mapper.createObjectNode();
+        block.put("baseFeePerGas", quantity(10_000_000_000L + random.nextInt(1_000_000_000)));
+        block.put("difficulty", "0x0");
+        block.put("extraData", hex(random, 16));
+        block.put("gasLimit", quantity(30_000_000));
+        block.put("gasUsed", quantity(random.nextInt(30_000_000)));
+        block.put("hash", blockHash(blockNumber));
+        block.put("logsBloom", hex(random, 256));
+        block.put("miner", hex(random, 20));
+        block.put("mixHash", hex(random, 32));
+        block.put("nonce", "0x0000000000000000");
+        block.put("number", quantity(blockNumber));
+        block.put("parentHash", blockHash(blockNumber - 1));
+        block.put("receiptsRoot", hex(random, 32));
+        block.put("sha3Uncles", hex(random, 32));
+        block.put("size", quantity(50_000 + random.nextInt(100_000)));
+        block.put("stateRoot", hex(random, 32));
+        block.put("timestamp", quantity(1_700_000_000L + blockNumber * 12 - 19_000_000L * 12));
+        block.put("totalDifficulty", "0xc70d815d562d3cfa955");
+
+        ArrayNode transactions = block.putArray("transactions");
+        for (int i = 0; i < transactionCount; i++) {
+            var hash = txHash(blockNumber, i);
+            if (fullTransactions) {
+                transactions.add(transaction(hash, blockNumber, i));
+            }
+            else {
+                transactions.add(hash);
+            }
+        }
+
+        block.put("transactionsRoot", hex(random, 32));
+        block.putArray("uncles");
+        return block;
+    }
+}
@@ -0,0 +1,102 @@
+package com.pshdev0.reddy.benchmarks;
+
+import com.pshdev0.reddy.CacheBackend;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Redis stand-in for running the benchmarks without a Redis server. It has no network round trip, so it isolates
+ * the library's own overhead; pass -Dreddy.redis=host:port to measure against a real Redis instead.
+ */
+public class InMemoryCacheBackend implements CacheBackend {
+
+    private record Entry(byte[] value, long expiresAt) {
+        boolean isExpired() {
+            return expiresAt > 0 && System.currentTimeMillis() >= expiresAt;
+        }
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private static long expiresAt(long ttlMillis) {
+        return ttlMillis > 0 ? System.currentTimeMillis() + ttlMillis : 0;
+    }
+
+    @Override
+    public byte[] get(String key) {
+        var entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isExpired()) {
+            entries.remove(key, entry);
+            return null;
+        }
+        return entry.value();
+    }
+
+    @Override
+    public void set(String key, byte[] value, long ttlMillis) {
+        entries.put(key, new Entry(value, expiresAt(ttlMillis)));
+    }
+
+    @Override
+    public boolean setIfAbsent(String key, String value, long ttlMillis) {
+        var entry = new Entry(value.getBytes(), expiresAt(ttlMillis));
+        var stored = entries.compute(key, (k, existing) -> existing == null || existing.isExpired() ? entry : existing);
+        return stored == entry;
+    }
+
+    @Override
+    public List<byte[]> mget(List<String> keys) {
+        var values = new ArrayList<byte[]>(keys.size());
+        for (var key : keys) {
+            values.add(get(key));
+        }
+        return values;
+    }
+
+    @Override
+    public void mset(Map<String, byte[]> values, long ttlMillis) {
+        values.forEach((key, value) -> set(key, value, ttlMillis));
+    }
+
+    @Override
+    public void del(String key) {
+        entries.remove(key);
+    }
+
+    @Override
+    public boolean delIfEquals(String key, String value) {
+        var entry = entries.get(key);
+        return entry != null && !entry.isExpired() && Arrays.equals(entry.value(), value.getBytes()) && entries.remove(key, entry);
+    }
+
+    @Override
+    public void forEach(String keyPrefix, EntryVisitor visitor) throws Exception {
+        var now = System.currentTimeMillis();
+        for (var e : entries.entrySet()) {
+            var entry = e.getValue();
+            if (e.getKey().startsWith(keyPrefix) && !entry.isExpired()) {
+                visitor.visit(e.getKey(), entry.value(), entry.expiresAt() > 0 ? Math.max(1, entry.expiresAt() - now) : 0);
+            }
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    @Override
+    public void close() {
+        entries.clear();
+    }
+}
@@ -0,0 +1,67 @@
+package com.pshdev0.reddy.benchmarks;
+
+import com.pshdev0.reddy.Network;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Key derivation runs on every lookup, hit or miss. Run with -prof gc to get bytes/op alongside ns/op.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KeyDerivationBenchmark {
+
+    private String txHash;
+    private String requestBody;
+
+    @Setup
+    public void setup() {
+        Network.setRedisKeyPrefix("reddy-bench");
+        txHash = Fixtures.txHash(Fixtures.LATEST_BLOCK, 0);
+        requestBody = """
+                {
+                    "jsonrpc": "2.0",
+                    "method": "eth_call",
+                    "params": [{"to": "0xdAC17F958D2ee523a2206206994597C13D831ec7", "data": "0x70a08231000000000000000000000000%s"}, "latest"],
+                    "id": 1
+                }
+                """.formatted(txHash.substring(26));
+    }
+
+    @Benchmark
+    public String singleArgumentKey() {
+        return Network.createRedisKey(BenchmarkSupport.SOURCE, "getTxByHash", 0, txHash);
+    }
+
+    @Benchmark
+    public String multiArgumentKey() {
+        return Network.createRedisKey(BenchmarkSupport.SOURCE, "getBlockByNumber", 0, "19000000", "true");
+    }
+
+    /**
+     * A POST body with whitespace to strip, as used by getCachedOrPostAndWait
+     */
+    @Benchmark
+    public String requestBodyKey() {
+        return Network.createRedisKey(BenchmarkSupport.SOURCE, "POST", 0, "https://rpc.example.org", requestBody);
+    }
+
+    @Benchmark
+    public String keccak256() {
+        return Network.getKeccak256Hash(txHash);
+    }
+}
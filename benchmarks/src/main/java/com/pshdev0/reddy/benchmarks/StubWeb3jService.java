@@ -0,0 +1,103 @@
+package com.pshdev0.reddy.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.web3j.protocol.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Web3jService that answers JSON-RPC requests from Fixtures instead of the network. Requests still go through web3j's
+ * own serialisation and response parsing, so a stubbed call costs what a real one does minus the network.
+ */
+public class StubWeb3jService extends Service {
+
+    private final int transactionsPerBlock;
+    private final long latencyMicros;
+    private final LongAdder calls = new LongAdder();
+
+    public StubWeb3jService() {
+        this(150, 0);
+    }
+
+    /**
+     * @param latencyMicros simulated network latency per request (or per batch), 0 for none
+     */
+    public StubWeb3jService(int transactionsPerBlock, long latencyMicros) {
+        super(false);
+        this.transactionsPerBlock = transactionsPerBlock;
+        this.latencyMicros = latencyMicros;
+    }
+
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    @Override
+    protected InputStream performIO(String payload) throws IOException {
+        calls.increment();
+        if (latencyMicros > 0) {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(latencyMicros));
+        }
+
+        var request = objectMapper.readTree(payload);
+        JsonNode response;
+        if (request.isArray()) {
+            var responses = objectMapper.createArrayNode();
+            request.forEach(r -> responses.add(respond(r)));
+            response = responses;
+        }
+        else {
+            response = respond(request);
+        }
+        return new ByteArrayInputStream(objectMapper.writeValueAsBytes(response));
+    }
+
+    private ObjectNode respond(JsonNode request) {
+        var response = objectMapper.createObjectNode();
+        response.put("jsonrpc", "2.0");
+        response.set("id", request.get("id"));
+
+        var params = request.get("params");
+        switch (request.get("method").asText()) {
+            case "eth_blockNumber" -> response.put("result", "0x" + Long.toHexString(Fixtures.LATEST_BLOCK));
+            case "eth_chainId" -> response.put("result", "0x1");
+            case "eth_getBlockByNumber" -> {
+                var number = Long.decode(params.get(0).asText());
+                response.set("result", Fixtures.block(number, transactionsPerBlock, params.get(1).asBoolean()));
+            }
+            case "eth_getTransactionByHash" -> {
+                var hash = params.get(0).asText();
+                response.set("result", Fixtures.transaction(hash, blockOf(hash), indexOf(hash)));
+            }
+            case "eth_getTransactionReceipt" -> {
+                var hash = params.get(0).asText();
+                response.set("result", Fixtures.receipt(hash, blockOf(hash), indexOf(hash)));
+            }
+            default -> {
+                var error = response.putObject("error");
+                error.put("code", -32601);
+                error.put("message", "method not supported by stub: " + request.get("method").asText());
+            }
+        }
+        return response;
+    }
+
+    // the stub has no chain state, so any hash is found in a block derived from the hash itself
+    private static long blockOf(String hash) {
+        return Fixtures.LATEST_BLOCK - (hash.hashCode() & 0xffff);
+    }
+
+    private static int indexOf(String hash) {
+        return (hash.hashCode() >>> 16) & 0xff;
+    }
+
+    @Override
+    public void close() {
+    }
+}
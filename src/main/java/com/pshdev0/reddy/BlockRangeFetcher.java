@@ -0,0 +1,204 @@
+package com.pshdev0.reddy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.web3j.protocol.core.methods.response.EthBlock;
+import org.web3j.protocol.core.methods.response.Transaction;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+
+import java.math.BigInteger;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Streams a range of blocks, fetching up to parallelism blocks at once through the cached CachedWeb3 methods.
+ * At most bufferSize blocks are fetched ahead of the consumer, so a slow consumer holds the fetchers back rather than
+ * letting fetched blocks pile up in memory.
+ */
+public class BlockRangeFetcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(BlockRangeFetcher.class);
+
+    /**
+     * @param block    the block, or null if it could not be fetched
+     * @param receipts the receipts of the block's transactions in order, if receipts were requested (else null)
+     */
+    public record FetchedBlock(BigInteger number, EthBlock.Block block, List<TransactionReceipt> receipts) { }
+
+    private final String rpcId;
+    private final String rpcUrl;
+    private final int parallelism;
+    private final int bufferSize;
+    private final boolean ordered;
+    private final boolean withReceipts;
+
+    public BlockRangeFetcher(String rpcId, String rpcUrl) {
+        this(rpcId, rpcUrl, 8, 32, true, false);
+    }
+
+    /**
+     * @param ordered      deliver blocks in block order, otherwise in the order they finish
+     * @param withReceipts also fetch (in one batch per block) the receipts of every transaction
+     */
+    public BlockRangeFetcher(String rpcId, String rpcUrl, int parallelism, int bufferSize, boolean ordered, boolean withReceipts) {
+        if (parallelism < 1 || bufferSize < parallelism) {
+            throw new IllegalArgumentException("parallelism must be at least 1 and bufferSize at least parallelism");
+        }
+        this.rpcId = rpcId;
+        this.rpcUrl = rpcUrl;
+        this.parallelism = parallelism;
+        this.bufferSize = bufferSize;
+        this.ordered = ordered;
+        this.withReceipts = withReceipts;
+    }
+
+    /**
+     * Stream blocks fromBlock to toBlock inclusive. Close the stream (or use try-with-resources) to stop fetching early.
+     */
+    public Stream<FetchedBlock> stream(BigInteger fromBlock, BigInteger toBlock) {
+        var count = toBlock.subtract(fromBlock).add(BigInteger.ONE).longValueExact();
+        if (count <= 0) {
+            return Stream.empty();
+        }
+
+        var iterator = ordered ? new OrderedIterator(count) : new UnorderedIterator(count);
+        iterator.start(fromBlock);
+        var spliterator = Spliterators.spliterator(iterator, count, Spliterator.NONNULL | (ordered ? Spliterator.ORDERED : 0));
+        return StreamSupport.stream(spliterator, false).onClose(iterator::close);
+    }
+
+    private FetchedBlock fetch(BigInteger number) {
+        var block = CachedWeb3.getBlockByNumber(rpcId, rpcUrl, number);
+        List<TransactionReceipt> receipts = null;
+        if (withReceipts && block != null) {
+            var hashes = block.getTransactions().stream().map(x -> ((Transaction) x.get()).getHash()).toList();
+            receipts = CachedWeb3.getReceiptsByHash(rpcId, rpcUrl, hashes);
+        }
+        return new FetchedBlock(number, block, receipts);
+    }
+
+    private abstract class FetchIterator implements Iterator<FetchedBlock>, AutoCloseable {
+        protected final Semaphore fetchPermits = new Semaphore(parallelism);
+        protected final long count;
+        protected long delivered;
+        protected volatile boolean closed;
+        private Thread producer;
+
+        FetchIterator(long count) {
+            this.count = count;
+        }
+
+        void start(BigInteger fromBlock) {
+            producer = Thread.ofVirtual().name("block-range-" + fromBlock).start(() -> {
+                try {
+                    for (long i = 0; i < count && !closed; i++) {
+                        submit(fromBlock.add(BigInteger.valueOf(i)));
+                    }
+                } catch (InterruptedException ignored) {
+                    // closed early
+                }
+            });
+        }
+
+        /**
+         * Start fetching a block, blocking while the buffer is full
+         */
+        protected abstract void submit(BigInteger number) throws InterruptedException;
+
+        protected abstract FetchedBlock take() throws InterruptedException;
+
+        protected CompletableFuture<FetchedBlock> fetchAsync(BigInteger number) {
+            return CompletableFuture.supplyAsync(() -> {
+                fetchPermits.acquireUninterruptibly();
+                try {
+                    return fetch(number);
+                } catch (RuntimeException e) {
+                    logger.error("could not fetch block " + number + ": " + e.getMessage());
+                    return new FetchedBlock(number, null, null);
+                } finally {
+                    fetchPermits.release();
+                }
+            }, Network.getAsyncExecutor());
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !closed && delivered < count;
+        }
+
+        @Override
+        public FetchedBlock next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            try {
+                var fetched = take();
+                delivered++;
+                return fetched;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                close();
+                throw new NoSuchElementException("interrupted");
+            }
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            if (producer != null) {
+                producer.interrupt();
+            }
+        }
+    }
+
+    private class OrderedIterator extends FetchIterator {
+        // futures in block order, the consumer waits on the head while later blocks are fetched
+        private final BlockingQueue<CompletableFuture<FetchedBlock>> pending = new ArrayBlockingQueue<>(bufferSize);
+
+        OrderedIterator(long count) {
+            super(count);
+        }
+
+        @Override
+        protected void submit(BigInteger number) throws InterruptedException {
+            pending.put(fetchAsync(number));
+        }
+
+        @Override
+        protected FetchedBlock take() throws InterruptedException {
+            return pending.take().join();
+        }
+    }
+
+    private class UnorderedIterator extends FetchIterator {
+        // a permit is held for every block submitted but not yet taken by the consumer
+        private final Semaphore bufferPermits = new Semaphore(bufferSize);
+        private final BlockingQueue<FetchedBlock> done = new ArrayBlockingQueue<>(bufferSize);
+
+        UnorderedIterator(long count) {
+            super(count);
+        }
+
+        @Override
+        protected void submit(BigInteger number) throws InterruptedException {
+            bufferPermits.acquire();
+            fetchAsync(number).thenAccept(done::add);
+        }
+
+        @Override
+        protected FetchedBlock take() throws InterruptedException {
+            var fetched = done.take();
+            bufferPermits.release();
+            return fetched;
+        }
+    }
+}
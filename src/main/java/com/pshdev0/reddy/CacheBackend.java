@@ -0,0 +1,66 @@
+package com.pshdev0.reddy;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The key/value store sitting behind Network.getCachedOrComputeAndWait. Values are opaque bytes produced by a
+ * CacheCodec. Implementations must be safe to call from many threads at once.
+ */
+public interface CacheBackend extends AutoCloseable {
+
+    /**
+     * @return the value stored under key, or null if there is none
+     */
+    byte[] get(String key);
+
+    /**
+     * Store a value with an expiry in a single operation
+     * @param ttlMillis time to live, 0 or less to keep the value forever
+     */
+    void set(String key, byte[] value, long ttlMillis);
+
+    /**
+     * Store a value only if the key does not exist yet (SET NX PX), used for short-lived locks
+     * @return true if the value was stored
+     */
+    boolean setIfAbsent(String key, String value, long ttlMillis);
+
+    /**
+     * @return one value per key, in the same order as keys, null where there is no value
+     */
+    List<byte[]> mget(List<String> keys);
+
+    /**
+     * Store many values with the same expiry, batched into as few round trips as the backend allows
+     * @param ttlMillis time to live, 0 or less to keep the values forever
+     */
+    void mset(Map<String, byte[]> values, long ttlMillis);
+
+    void del(String key);
+
+    /**
+     * Delete key only if it holds value, as a single atomic step, e.g. to release a lock only while still holding it
+     * @return true if the key was deleted
+     */
+    boolean delIfEquals(String key, String value);
+
+    /**
+     * Receives the entries visited by forEach
+     */
+    interface EntryVisitor {
+        /**
+         * @param ttlMillis remaining time to live, 0 if the entry never expires
+         */
+        void visit(String key, byte[] value, long ttlMillis) throws Exception;
+    }
+
+    /**
+     * Visit every entry whose key starts with keyPrefix, in no particular order, e.g. to export the cache. Entries
+     * written or deleted while this runs may or may not be visited.
+     */
+    void forEach(String keyPrefix, EntryVisitor visitor) throws Exception;
+
+    @Override
+    void close();
+}
@@ -0,0 +1,27 @@
+package com.pshdev0.reddy;
+
+import java.io.IOException;
+
+/**
+ * Converts cached values to and from the bytes held by the cache backend.
+ * <p>
+ * Every codec has a format id. Values written by a codec with id 0 are stored as-is, which is how plain JSON entries
+ * have always been stored. Any other codec's output is prefixed with a two byte header, FORMAT_MARKER followed by the
+ * format id, so that Network can pick the right codec when reading and older plain JSON entries (which can never start
+ * with a 0 byte) keep working.
+ */
+public interface CacheCodec {
+
+    byte FORMAT_MARKER = 0;
+
+    /**
+     * Reserved, never a codec's format id: FORMAT_MARKER followed by this byte is how a negatively cached null is stored
+     */
+    byte NULL_FORMAT_ID = -1;
+
+    byte getFormatId();
+
+    byte[] encode(Object value) throws IOException;
+
+    <T> T decode(byte[] bytes, int offset, int length, Class<T> clazz) throws IOException;
+}
@@ -0,0 +1,37 @@
+package com.pshdev0.reddy;
+
+/**
+ * Receives timings and counts from the cache, keyed by the redisSourceName and redisMethodName of each call.
+ * Implement this to forward to a metrics library, or use the built-in MetricsRegistry. Every method defaults to a
+ * no-op so implementations only need to override what they record, and all of them are called on the hot path so
+ * should not block.
+ */
+public interface CacheMetrics {
+
+    CacheMetrics NOOP = new CacheMetrics() { };
+
+    enum Tier { LOCAL, BACKEND }
+
+    default void recordLookup(String source, String method, Tier tier, boolean hit) { }
+
+    /**
+     * Time taken by a single backend round trip (GET, SET, MGET or MSET)
+     */
+    default void recordBackendLatency(String source, String method, long nanos) { }
+
+    /**
+     * Time taken by a single attempt of the compute function, i.e. the RPC or HTTP call, whether it succeeded or not
+     */
+    default void recordComputeLatency(String source, String method, long nanos) { }
+
+    default void recordRetry(String source, String method) { }
+
+    default void recordEncode(String source, String method, long nanos, int payloadBytes) { }
+
+    default void recordDecode(String source, String method, long nanos, int payloadBytes) { }
+
+    /**
+     * The compute function returned null (or every attempt failed) so nothing was cached
+     */
+    default void recordNullNotCached(String source, String method) { }
+}
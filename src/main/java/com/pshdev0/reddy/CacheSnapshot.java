@@ -0,0 +1,200 @@
+package com.pshdev0.reddy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Export and import of the cache to a local snapshot file, so that a fresh backend (a new Redis, a CI box) can be
+ * seeded without refetching everything from archive nodes.
+ * <p>
+ * The file is a header (MAGIC, FORMAT_VERSION, entry count) followed by one record per entry: key length and UTF-8
+ * key bytes, value length and value bytes as stored by the backend (so already encoded by whichever codec wrote them),
+ * and the absolute expiry time in epoch millis, 0 for none. Imports read the file through memory-mapped windows.
+ */
+public class CacheSnapshot {
+
+    private static final Logger logger = LoggerFactory.getLogger(CacheSnapshot.class);
+
+    private static final long MAGIC = 0x5245444459534e50L; // "REDDYSNP"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = 8 + 4 + 8;
+    private static final long MAP_WINDOW_BYTES = 256L * 1024 * 1024;
+    private static final int IMPORT_BATCH_SIZE = 1000;
+
+    private CacheSnapshot() { }
+
+    /**
+     * Export every entry under the current redisKeyPrefix from the current cache backend
+     * @return the number of entries written
+     */
+    public static long export(Path file) throws Exception {
+        return export(Network.getCacheBackend(), Network.getRedisKeyPrefix() + ":", file);
+    }
+
+    /**
+     * Export every entry of backend whose key starts with keyPrefix, except the short-lived locks taken while values
+     * are computed. The snapshot is written to a temporary file and moved into place when complete, so an interrupted
+     * export never leaves a truncated snapshot behind, and the temporary file is deleted if the export fails.
+     * @return the number of entries written
+     */
+    public static long export(CacheBackend backend, String keyPrefix, Path file) throws Exception {
+        var temp = file.resolveSibling(file.getFileName() + ".tmp");
+        var count = new long[1];
+
+        try {
+            try (var channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                var out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+                out.writeLong(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(0); // entry count, filled in below
+
+                var now = System.currentTimeMillis();
+                backend.forEach(keyPrefix, (key, value, ttlMillis) -> {
+                    if (key.endsWith(Network.LOCK_KEY_SUFFIX)) {
+                        return;
+                    }
+                    var keyBytes = key.getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(keyBytes.length);
+                    out.write(keyBytes);
+                    out.writeInt(value.length);
+                    out.write(value);
+                    out.writeLong(ttlMillis > 0 ? now + ttlMillis : 0);
+                    count[0]++;
+                });
+                out.flush();
+
+                channel.write(ByteBuffer.allocate(8).putLong(0, count[0]), 12);
+                channel.force(true);
+            }
+
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (Exception e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+
+        logger.info("exported {} cache entries to {}", count[0], file);
+        return count[0];
+    }
+
+    /**
+     * Import a snapshot into the current cache backend
+     * @return the number of entries imported
+     */
+    public static long importInto(Path file) throws IOException {
+        return importInto(Network.getCacheBackend(), file);
+    }
+
+    /**
+     * Import a snapshot into backend, overwriting entries with the same keys. Entries that have expired since the
+     * export are skipped, the rest keep their remaining time to live (rounded down to the second, so that entries
+     * can be written in a few batched msets rather than one SET each).
+     * @return the number of entries imported
+     */
+    public static long importInto(CacheBackend backend, Path file) throws IOException {
+        long imported = 0;
+
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            var reader = new MappedReader(channel);
+            if (reader.getLong() != MAGIC) {
+                throw new IOException(file + " is not a cache snapshot");
+            }
+            var version = reader.getInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("unsupported cache snapshot version " + version);
+            }
+            var count = reader.getLong();
+
+            // entries to write, grouped by ttl
+            var batch = new HashMap<Long, Map<String, byte[]>>();
+            var batchSize = 0;
+            for (long i = 0; i < count; i++) {
+                var key = new String(reader.getBytes(reader.getInt()), StandardCharsets.UTF_8);
+                var value = reader.getBytes(reader.getInt());
+                var expiresAt = reader.getLong();
+
+                long ttlMillis = 0;
+                if (expiresAt > 0) {
+                    ttlMillis = (expiresAt - System.currentTimeMillis()) / 1000 * 1000;
+                    if (ttlMillis <= 0) {
+                        continue;
+                    }
+                }
+
+                batch.computeIfAbsent(ttlMillis, ttl -> new HashMap<>()).put(key, value);
+                imported++;
+                if (++batchSize == IMPORT_BATCH_SIZE) {
+                    batch.forEach((ttl, values) -> backend.mset(values, ttl));
+                    batch.clear();
+                    batchSize = 0;
+                }
+            }
+            batch.forEach((ttl, values) -> backend.mset(values, ttl));
+        }
+
+        logger.info("imported {} cache entries from {}", imported, file);
+        return imported;
+    }
+
+    /**
+     * Sequential reads over a file of any size through a sliding read-only mapping
+     */
+    private static class MappedReader {
+        private final FileChannel channel;
+        private final long size;
+        private MappedByteBuffer window;
+        private long windowStart;
+
+        MappedReader(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+            map(0, HEADER_BYTES);
+        }
+
+        private void map(long position, long minBytes) throws IOException {
+            if (position + minBytes > size) {
+                throw new IOException("cache snapshot is truncated");
+            }
+            windowStart = position;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(size - position, Math.max(minBytes, MAP_WINDOW_BYTES)));
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (window.remaining() < bytes) {
+                map(windowStart + window.position(), bytes);
+            }
+        }
+
+        int getInt() throws IOException {
+            ensure(4);
+            return window.getInt();
+        }
+
+        long getLong() throws IOException {
+            ensure(8);
+            return window.getLong();
+        }
+
+        byte[] getBytes(int length) throws IOException {
+            ensure(length);
+            var bytes = new byte[length];
+            window.get(bytes);
+            return bytes;
+        }
+    }
+}
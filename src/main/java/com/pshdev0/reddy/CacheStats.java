@@ -0,0 +1,43 @@
+package com.pshdev0.reddy;
+
+import java.util.function.ToLongFunction;
+
+/**
+ * Hit/miss totals for each cache tier, the local (L1) on-heap cache and the cache backend (L2), summed over every
+ * source and method of a MetricsRegistry. Local counters only move for methods that have a local cache enabled.
+ */
+public class CacheStats {
+
+    private final MetricsRegistry registry;
+
+    CacheStats(MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    public long getLocalHits() { return sum(MetricsRegistry.MethodMetrics::getLocalHits); }
+    public long getLocalMisses() { return sum(MetricsRegistry.MethodMetrics::getLocalMisses); }
+    public long getBackendHits() { return sum(MetricsRegistry.MethodMetrics::getBackendHits); }
+    public long getBackendMisses() { return sum(MetricsRegistry.MethodMetrics::getBackendMisses); }
+
+    /**
+     * Reset the underlying registry, latencies included
+     */
+    public void reset() {
+        registry.reset();
+    }
+
+    private long sum(ToLongFunction<MetricsRegistry.MethodMetrics> counter) {
+        var total = 0L;
+        for (var methods : registry.bySource().values()) {
+            for (var metrics : methods.values()) {
+                total += counter.applyAsLong(metrics);
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        return "local " + getLocalHits() + "/" + getLocalMisses() + ", backend " + getBackendHits() + "/" + getBackendMisses() + " (hits/misses)";
+    }
+}
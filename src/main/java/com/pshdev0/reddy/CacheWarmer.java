@@ -0,0 +1,101 @@
+package com.pshdev0.reddy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fills the cache for a range of blocks ahead of time, e.g. before a new worker starts taking requests. Blocks are
+ * fetched batchSize at a time with one JSON-RPC batch request and cached as headers plus transactions, and
+ * (optionally) their receipts are cached alongside them, all under the same keys the CachedWeb3 lookups use. Every
+ * batch is written back with a single pipelined mset, and blocks already cached are not fetched again, so an
+ * interrupted warm-up can simply be rerun.
+ */
+public class CacheWarmer {
+
+    private static final Logger logger = LoggerFactory.getLogger(CacheWarmer.class);
+
+    private final String rpcId;
+    private final String rpcUrl;
+    private final int parallelism;
+    private final int batchSize;
+    private final boolean withReceipts;
+
+    public CacheWarmer(String rpcId, String rpcUrl) {
+        this(rpcId, rpcUrl, 4, 10, true);
+    }
+
+    /**
+     * @param parallelism  number of batches in flight at once
+     * @param batchSize    number of blocks fetched per batch request
+     * @param withReceipts also cache the receipts of every transaction (one batch request per block)
+     */
+    public CacheWarmer(String rpcId, String rpcUrl, int parallelism, int batchSize, boolean withReceipts) {
+        if (parallelism < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("parallelism and batchSize must be at least 1");
+        }
+        this.rpcId = rpcId;
+        this.rpcUrl = rpcUrl;
+        this.parallelism = parallelism;
+        this.batchSize = batchSize;
+        this.withReceipts = withReceipts;
+    }
+
+    /**
+     * Cache blocks fromBlock to toBlock inclusive, blocking until done
+     * @return the number of blocks that are now cached, less than the size of the range if some could not be fetched
+     */
+    public long warm(BigInteger fromBlock, BigInteger toBlock) {
+        var permits = new Semaphore(parallelism);
+        var warmed = new LongAdder();
+        var start = System.currentTimeMillis();
+
+        for (var batchStart = fromBlock; batchStart.compareTo(toBlock) <= 0; batchStart = batchStart.add(BigInteger.valueOf(batchSize))) {
+            var numbers = new ArrayList<BigInteger>(batchSize);
+            for (var number = batchStart; numbers.size() < batchSize && number.compareTo(toBlock) <= 0; number = number.add(BigInteger.ONE)) {
+                numbers.add(number);
+            }
+
+            permits.acquireUninterruptibly();
+            Network.getAsyncExecutor().execute(() -> {
+                try {
+                    warmed.add(warmBatch(numbers));
+                } catch (RuntimeException e) {
+                    logger.error("could not warm blocks " + numbers.get(0) + " to " + numbers.get(numbers.size() - 1) + ": " + e.getMessage());
+                } finally {
+                    permits.release();
+                }
+            });
+        }
+
+        // every batch has finished once all the permits are back
+        permits.acquireUninterruptibly(parallelism);
+        permits.release(parallelism);
+
+        logger.info("{} blocks {} to {} warmed ({} cached) in {}ms", rpcId, fromBlock, toBlock, warmed.sum(), System.currentTimeMillis() - start);
+        return warmed.sum();
+    }
+
+    private int warmBatch(List<BigInteger> numbers) {
+        // only headers are read back for blocks already cached, their transactions are not loaded
+        var headers = CachedWeb3.getBlockHeaders(rpcId, rpcUrl, numbers, new HashMap<>());
+
+        int warmed = 0;
+        for (var header : headers) {
+            if (header == null) {
+                continue;
+            }
+            if (withReceipts && !header.getTransactions().isEmpty()) {
+                CachedWeb3.getReceiptsByHash(rpcId, rpcUrl, CachedWeb3.getTransactionHashes(header));
+            }
+            warmed++;
+        }
+        return warmed;
+    }
+}
@@ -1,5 +1,8 @@
 package com.pshdev0.reddy;
 
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -8,35 +11,129 @@ import org.web3j.abi.FunctionReturnDecoder;
 import org.web3j.abi.TypeReference;
 import org.web3j.abi.datatypes.Address;
 import org.web3j.abi.datatypes.Function;
+import org.web3j.abi.datatypes.Type;
 import org.web3j.abi.datatypes.Uint;
 import org.web3j.abi.datatypes.generated.Uint256;
+import org.web3j.crypto.WalletUtils;
 import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.BatchRequest;
 import org.web3j.protocol.core.DefaultBlockParameter;
 import org.web3j.protocol.core.DefaultBlockParameterNumber;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.request.EthFilter;
 import org.web3j.protocol.core.methods.response.EthBlock;
 import org.web3j.protocol.core.methods.response.EthCall;
+import org.web3j.protocol.core.methods.response.Log;
 import org.web3j.protocol.core.methods.response.Transaction;
 import org.web3j.protocol.core.methods.response.TransactionReceipt;
 import org.web3j.protocol.http.HttpService;
 
+import java.io.IOException;
 import java.math.BigInteger;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.web3j.protocol.core.methods.request.Transaction.createEthCallTransaction;
 
 public class CachedWeb3 {
 
     private static final Logger logger = LoggerFactory.getLogger(CachedWeb3.class);
-    private static final Map<String, Web3j> webMap = new HashMap<>();
-    private static final Map<String, String> archiveNodes = new HashMap<>();
+    private static final Map<String, Web3j> webMap = new ConcurrentHashMap<>();
+    private static final Map<String, String> archiveNodes = new ConcurrentHashMap<>();
+    private static final Map<String, List<String>> archiveNodeUrls = new ConcurrentHashMap<>();
+    // created from archiveNodeUrls, and again on first use after shutdown
+    private static final Map<String, RpcEndpointPool> archiveNodePools = new ConcurrentHashMap<>();
+    private static volatile OkHttpClient httpClient;
 
     private static final int CACHE_VERSION = 0;
 
+    public static final long DEFAULT_NEAR_HEAD_TTL_MILLIS = 12_000;
+    public static final long DEFAULT_HEAD_TTL_MILLIS = 2_000;
+
+    private static final Map<String, Integer> confirmationDepths = new ConcurrentHashMap<>();
+    private static final Map<String, Long> nearHeadTtls = new ConcurrentHashMap<>();
+    private static volatile long headTtlMillis = DEFAULT_HEAD_TTL_MILLIS;
+    // the highest head seen per rpcId, so blocks already final against it need no head lookup
+    private static final Map<String, BigInteger> knownHeads = new ConcurrentHashMap<>();
+
+    private static final Map<String, String> multicallAddresses = new ConcurrentHashMap<>();
+    private static volatile int multicallBatchSize = 500;
+
+    public static final int DEFAULT_LOG_CHUNK_SIZE = 2_000;
+
+    /**
+     * Same arguments as getTokenIntegerBalance
+     */
+    public record TokenBalanceQuery(String walletAddress, String tokenAddress) { }
+
+    /**
+     * A read-only call of function on contract
+     */
+    public record ContractCall(String contract, Function function) { }
+
+    /**
+     * An eth_getLogs filter: logs emitted by any of addresses (by any contract if empty) whose topic i is any of
+     * topics.get(i) (anything if that list is null or empty)
+     */
+    public record LogFilter(List<String> addresses, List<List<String>> topics) {
+
+        public LogFilter {
+            addresses = addresses == null ? List.of() : List.copyOf(addresses);
+            topics = topics == null ? List.of() : topics.stream().map(t -> t == null ? List.<String>of() : List.copyOf(t)).toList();
+        }
+
+        public static LogFilter of(String address, String... topic0) {
+            return new LogFilter(List.of(address), topic0.length == 0 ? List.of() : List.of(List.of(topic0)));
+        }
+
+        EthFilter toEthFilter(BigInteger fromBlock, BigInteger toBlock) {
+            var filter = new EthFilter(new DefaultBlockParameterNumber(fromBlock), new DefaultBlockParameterNumber(toBlock), addresses);
+            for (var topic : topics) {
+                if (topic.isEmpty()) {
+                    filter.addNullTopic();
+                }
+                else if (topic.size() == 1) {
+                    filter.addSingleTopic(topic.get(0));
+                }
+                else {
+                    filter.addOptionalTopics(topic.toArray(String[]::new));
+                }
+            }
+            return filter;
+        }
+
+        /**
+         * The filter in a canonical form, so that equivalent filters share cached chunks
+         */
+        String addressKey() {
+            return addresses.stream().map(String::toLowerCase).sorted().distinct().collect(Collectors.joining(","));
+        }
+
+        String topicKey() {
+            var keys = new ArrayList<>(topics.stream()
+                    .map(t -> t.stream().map(String::toLowerCase).sorted().distinct().collect(Collectors.joining("|")))
+                    .toList());
+            // trailing wildcards match anything, so they do not change the filter
+            while (!keys.isEmpty() && keys.get(keys.size() - 1).isEmpty()) {
+                keys.remove(keys.size() - 1);
+            }
+            return String.join(";", keys);
+        }
+    }
+
     /**
      * Housekeeping
      */
@@ -45,56 +142,287 @@ public class CachedWeb3 {
         archiveNodes.putAll(hashMap);
     }
 
+    /**
+     * Register several endpoints for one rpcId. Calls made with a blank rpcUrl are then routed to the fastest healthy
+     * endpoint and fail over to the others (see RpcEndpointPool).
+     */
+    public static void addArchiveNodes(String rpcId, List<String> urls) {
+        archiveNodes.put(rpcId, urls.get(0));
+        archiveNodeUrls.put(rpcId, List.copyOf(urls));
+        var previous = archiveNodePools.put(rpcId, new RpcEndpointPool(rpcId, urls, CachedWeb3::createWeb3j));
+        if (previous != null) {
+            previous.close();
+        }
+    }
+
+    /**
+     * @return the endpoint pool of rpcId, or null if several endpoints were not registered for it
+     */
+    public static RpcEndpointPool getArchiveNodePool(String rpcId) {
+        var urls = archiveNodeUrls.get(rpcId);
+        if (urls == null) {
+            return null;
+        }
+        return archiveNodePools.computeIfAbsent(rpcId, id -> new RpcEndpointPool(id, urls, CachedWeb3::createWeb3j));
+    }
+
+    /**
+     * Make a call on the node for rpcId: the given rpcUrl if there is one, otherwise the endpoint pool for rpcId (if
+     * several endpoints were registered) or its single registered url
+     */
+    public static <T> T callRPC(String rpcId, String rpcUrl, ThrowingFunction<Web3j, T> call) throws Exception {
+        var pool = StringUtils.isBlank(rpcUrl) ? getArchiveNodePool(rpcId) : null;
+        if (pool != null) {
+            return pool.execute(call);
+        }
+        return call.apply(getRPCNode(rpcId, rpcUrl));
+    }
+
+    /**
+     * Enable the on-heap L1 cache for the immutable chain data methods: blocks, transactions and receipts
+     */
+    public static void enableLocalCache(int maxEntriesPerMethod) {
+        for (var method : List.of("getBlockHeader", "getTxByHash", "getReceiptByHash")) {
+            Network.enableLocalCache(method, maxEntriesPerMethod);
+        }
+    }
+
+    /**
+     * Cache "not found" for ttlMillis for the lookups that return null for data the node does not have: unknown
+     * transaction hashes, receipts of pending or unknown transactions, and failed or reverted contract calls
+     */
+    public static void enableNegativeCache(long ttlMillis) {
+        for (var method : List.of("getTxByHash", "getReceiptByHash", "ethCall")) {
+            Network.enableNegativeCache(method, ttlMillis);
+        }
+    }
+
+    /**
+     * Finality-aware caching
+     *
+     * By default everything is cached forever. Once a confirmation depth is set for an rpcId, block-relative data
+     * (blocks, balances, nonces and contract calls at a block) is only cached forever if the block is at least that
+     * many blocks behind the head; data nearer the head may still be reorged so it gets a short, per-method TTL.
+     */
+
+    /**
+     * Also keeps the head block number on the heap for its (short) lifetime, as it is then read on every finality
+     * check, unless a local cache for getLatestBlockNumberTtl is already configured
+     */
+    public static void setConfirmationDepth(String rpcId, int confirmations) {
+        confirmationDepths.put(rpcId, confirmations);
+        if (confirmations > 0 && Network.getLocalCache("getLatestBlockNumberTtl") == null) {
+            Network.enableLocalCache("getLatestBlockNumberTtl", 256);
+        }
+    }
+
+    /**
+     * @param method the cache method name, e.g. getBlockByNumber, getTokenBalance, ethGetBalance
+     */
+    public static void setNearHeadTtlMillis(String method, long ttlMillis) {
+        nearHeadTtls.put(method, ttlMillis);
+    }
+
+    /**
+     * How long the head block number used for finality checks may be cached for
+     */
+    public static void setHeadTtlMillis(long ttlMillis) {
+        headTtlMillis = ttlMillis;
+    }
+
+    /**
+     * Also called on every cache hit when a local cache is enabled, so a block that is final against the highest head
+     * seen so far is answered without looking the head up.
+     * @return the TTL to cache data of method at block with, 0 to cache it forever
+     */
+    public static long getTtlMillis(String rpcId, String rpcUrl, String method, BigInteger block) {
+        var confirmations = confirmationDepths.get(rpcId);
+        if (confirmations == null || confirmations <= 0) {
+            return 0;
+        }
+
+        var nearHeadTtl = nearHeadTtls.getOrDefault(method, DEFAULT_NEAR_HEAD_TTL_MILLIS);
+        if (block == null) {
+            return nearHeadTtl;
+        }
+        if (isFinal(block, knownHeads.get(rpcId), confirmations)) {
+            return 0;
+        }
+        return isFinal(block, getHeadBlockNumber(rpcId, rpcUrl), confirmations) ? 0 : nearHeadTtl;
+    }
+
+    private static boolean isFinal(BigInteger block, BigInteger head, int confirmations) {
+        return head != null && block.compareTo(head.subtract(BigInteger.valueOf(confirmations))) <= 0;
+    }
+
+    /**
+     * The head block number as used for finality checks, cached for the head TTL
+     */
+    static BigInteger getHeadBlockNumber(String rpcId, String rpcUrl) {
+        var head = getLatestBlockNumber(rpcId, rpcUrl, Duration.ofMillis(headTtlMillis));
+        if (head != null) {
+            knownHeads.merge(rpcId, head, BigInteger::max);
+        }
+        return head;
+    }
+
+    /**
+     * A pending transaction (one without a block hash yet) changes once it is mined, so it is only cached for as long
+     * as other near-head data
+     */
+    private static long getTtlMillis(Transaction transaction) {
+        if (transaction.getBlockHash() == null) {
+            return nearHeadTtls.getOrDefault("getTxByHash", DEFAULT_NEAR_HEAD_TTL_MILLIS);
+        }
+        return Network.getDefaultTtlMillis();
+    }
+
+    private static long getTtlMillis(String rpcId, String rpcUrl, String method, DefaultBlockParameter block) {
+        if (block instanceof DefaultBlockParameterNumber number) {
+            return getTtlMillis(rpcId, rpcUrl, method, number.getBlockNumber());
+        }
+        // a named block (latest, pending, ...) moves with the chain, so it is never final
+        return nearHeadTtls.getOrDefault(method, DEFAULT_NEAR_HEAD_TTL_MILLIS);
+    }
+
+    /**
+     * Multicall3 (see Multicall) is assumed to be at Multicall.DEFAULT_ADDRESS unless set otherwise here
+     */
+    public static void setMulticallAddress(String rpcId, String address) {
+        multicallAddresses.put(rpcId, address);
+    }
+
+    public static String getMulticallAddress(String rpcId) {
+        return multicallAddresses.getOrDefault(rpcId, Multicall.DEFAULT_ADDRESS);
+    }
+
+    /**
+     * Maximum number of calls packed into one aggregate3 eth_call, larger requests are split
+     */
+    public static void setMulticallBatchSize(int batchSize) {
+        multicallBatchSize = batchSize;
+    }
+
     public static boolean ready(String id) {
         return webMap.containsKey(id);
     }
 
     public static Web3j getRPCNode(String id, String url) throws Exception {
-        var key = id + ":" + url;
-        if(!ready(key)) {
-            webMap.put(key, createRPCNode(id, url));
-        }
-        return webMap.get(key);
+        // computeIfAbsent so that concurrent first calls share one client rather than each building their own
+        return webMap.computeIfAbsent(id + ":" + url, key -> createRPCNode(id, url));
     }
 
-    public static Web3j createRPCNode(String id, String url) throws Exception {
-        logger.info("createRPCNode: " + id + ", " + url);
+    public static Web3j createRPCNode(String id, String url) {
+        logger.info("createRPCNode: {}, {}", id, url);
 
         // the id must be known
         if (!archiveNodes.containsKey(id)) {
-            System.out.println("id is required");
-            throw new Exception();
+            throw new IllegalArgumentException("unknown rpc id " + id + ", register it with addArchiveNodes first");
         }
 
         // if the url is blank we use the one associated with the id key
         if (StringUtils.isBlank(url)) {
-            System.out.println("using native url for id");
-            return Web3j.build(new HttpService(archiveNodes.get(id)));
+            logger.debug("using native url for id");
+            return createWeb3j(archiveNodes.get(id));
         }
         else {
-            System.out.println("using provided url with provided id");
-            return Web3j.build(new HttpService(url));
+            logger.debug("using provided url with provided id");
+            return createWeb3j(url);
         }
     }
 
+    private static Web3j createWeb3j(String url) {
+        return Web3j.build(new HttpService(url, getHttpClient()));
+    }
+
+    /**
+     * Tune the HTTP client shared by every Web3j client. Clients that already exist keep the previous settings, so call
+     * this before making any RPC calls. The previous HTTP client's dispatcher threads and idle connections are released.
+     */
+    public static void configureHttpClient(int maxIdleConnections, long keepAliveMillis, int maxRequestsPerHost, long connectTimeoutMillis, long readTimeoutMillis) {
+        var dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(Math.max(64, maxRequestsPerHost * 4));
+        dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+
+        var client = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(maxIdleConnections, keepAliveMillis, TimeUnit.MILLISECONDS))
+                .dispatcher(dispatcher)
+                .connectTimeout(connectTimeoutMillis, TimeUnit.MILLISECONDS)
+                .readTimeout(readTimeoutMillis, TimeUnit.MILLISECONDS)
+                .writeTimeout(readTimeoutMillis, TimeUnit.MILLISECONDS)
+                .retryOnConnectionFailure(true)
+                .build();
+
+        OkHttpClient previous;
+        synchronized (CachedWeb3.class) {
+            previous = httpClient;
+            httpClient = client;
+        }
+        release(previous);
+    }
+
+    private static void release(OkHttpClient client) {
+        if (client != null) {
+            client.dispatcher().executorService().shutdown();
+            client.connectionPool().evictAll();
+        }
+    }
+
+    /**
+     * @return the HTTP client shared by every Web3j client, so that all endpoints draw on one connection pool
+     */
+    public static OkHttpClient getHttpClient() {
+        if (httpClient == null) {
+            synchronized (CachedWeb3.class) {
+                if (httpClient == null) {
+                    configureHttpClient(64, 5 * 60_000, 64, 10_000, 60_000);
+                }
+            }
+        }
+        return httpClient;
+    }
+
+    /**
+     * Shut down every Web3j client and endpoint pool and release the shared HTTP client's threads and connections.
+     * Registered nodes are kept, their clients and pools are created again on next use.
+     */
+    public static void shutdown() {
+        // removed one by one, so that a pool recreated by a concurrent call is not dropped without being closed
+        archiveNodePools.keySet().forEach(rpcId -> {
+            var pool = archiveNodePools.remove(rpcId);
+            if (pool != null) {
+                pool.close();
+            }
+        });
+        webMap.values().forEach(Web3j::shutdown);
+        webMap.clear();
+
+        OkHttpClient client;
+        synchronized (CachedWeb3.class) {
+            client = httpClient;
+            httpClient = null;
+        }
+        release(client);
+    }
+
     /**
      * Cached Web3 convenience methods
      */
 
     public static Transaction getTransactionByHash(String rpcId, String rpcUrl, String hash) {
         return Network.getCachedOrComputeAndWait(() -> {
-            var ethTransaction = getRPCNode(rpcId, rpcUrl).ethGetTransactionByHash(hash).send();
+            var ethTransaction = callRPC(rpcId, rpcUrl, node -> node.ethGetTransactionByHash(hash).send());
             if (ethTransaction.hasError()) {
                 logger.error("error retrieving transaction by hash: " + ethTransaction.getError().getMessage());
                 return null;
             }
             return ethTransaction.getResult();
-        }, Transaction.class, rpcId, "getTxByHash", CACHE_VERSION, hash);
+        }, Transaction.class, CachedWeb3::getTtlMillis, rpcId, "getTxByHash", CACHE_VERSION, hash);
     }
 
     public static TransactionReceipt getReceiptByHash(String rpcId, String rpcUrl, String hash) {
         return Network.getCachedOrComputeAndWait(() -> {
-            var receiptResponse = getRPCNode(rpcId, rpcUrl).ethGetTransactionReceipt(hash).send();
+            var receiptResponse = callRPC(rpcId, rpcUrl, node -> node.ethGetTransactionReceipt(hash).send());
             if (receiptResponse.hasError()) {
                 logger.error("error retrieving receipt by hash: " + receiptResponse.getError().getMessage());
                 return null;
@@ -103,35 +431,282 @@ public class CachedWeb3 {
         }, TransactionReceipt.class, rpcId, "getReceiptByHash", CACHE_VERSION, hash);
     }
 
+    /**
+     * Bulk version of getTransactionByHash: cached transactions are read in one round trip and the rest are fetched
+     * with a single JSON-RPC batch request
+     * @return one transaction per hash, in the same order as hashes, null where the transaction could not be found
+     */
+    public static List<Transaction> getTransactionsByHash(String rpcId, String rpcUrl, List<String> hashes) {
+        return Network.getCachedOrComputeAllAndWait(missingHashes -> sendBatch(rpcId, rpcUrl, node -> {
+            var batch = node.newBatch();
+            missingHashes.forEach(hash -> batch.add(node.ethGetTransactionByHash(hash)));
+            return batch;
+        }, Transaction.class), Transaction.class, Network.getDefaultMillis(), CachedWeb3::getTtlMillis, rpcId, "getTxByHash", CACHE_VERSION, hashes);
+    }
+
+    /**
+     * Bulk version of getReceiptByHash: cached receipts are read in one round trip and the rest are fetched with a
+     * single JSON-RPC batch request
+     * @return one receipt per hash, in the same order as hashes, null where the receipt could not be found
+     */
+    public static List<TransactionReceipt> getReceiptsByHash(String rpcId, String rpcUrl, List<String> hashes) {
+        return Network.getCachedOrComputeAllAndWait(missingHashes -> sendBatch(rpcId, rpcUrl, node -> {
+            var batch = node.newBatch();
+            missingHashes.forEach(hash -> batch.add(node.ethGetTransactionReceipt(hash)));
+            return batch;
+        }, TransactionReceipt.class), TransactionReceipt.class, rpcId, "getReceiptByHash", CACHE_VERSION, hashes);
+    }
+
+    /**
+     * Bulk version of getBlockByNumber: cached blocks are reassembled from their cached headers and transactions, and
+     * the rest are fetched with a single JSON-RPC batch request
+     * @return one block per number, in the same order as blocks, null where the block could not be found
+     */
+    public static List<EthBlock.Block> getBlocksByNumber(String rpcId, String rpcUrl, List<BigInteger> blocks) {
+        var fetched = new ConcurrentHashMap<BigInteger, EthBlock.Block>();
+        var headers = getBlockHeaders(rpcId, rpcUrl, blocks, fetched);
+
+        // every transaction of the blocks that were not fetched just now is read in one round trip
+        var hashes = headers.stream()
+                .filter(header -> header != null && !fetched.containsKey(header.getNumber()))
+                .flatMap(header -> getTransactionHashes(header).stream())
+                .toList();
+        var transactions = new HashMap<String, Transaction>();
+        if (!hashes.isEmpty()) {
+            var found = getTransactionsByHash(rpcId, rpcUrl, hashes);
+            for (int i = 0; i < hashes.size(); i++) {
+                transactions.put(hashes.get(i), found.get(i));
+            }
+        }
+
+        var results = new ArrayList<EthBlock.Block>(headers.size());
+        for (var header : headers) {
+            if (header == null) {
+                results.add(null);
+            }
+            else if (fetched.containsKey(header.getNumber())) {
+                results.add(fetched.get(header.getNumber()));
+            }
+            else {
+                results.add(hydrate(rpcId, rpcUrl, header, transactions));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Bulk version of getBlockHeader. Blocks that are not cached are fetched in full with a single JSON-RPC batch
+     * request, so that their transactions are cached too.
+     * @param fetched receives the full blocks that were fetched from the node, keyed by number
+     */
+    static List<EthBlock.Block> getBlockHeaders(String rpcId, String rpcUrl, List<BigInteger> blocks, Map<BigInteger, EthBlock.Block> fetched) {
+        var ids = blocks.stream().map(String::valueOf).toList();
+        return Network.getCachedOrComputeAllAndWait(missingIds -> {
+            var fullBlocks = sendBatch(rpcId, rpcUrl, node -> {
+                var batch = node.newBatch();
+                missingIds.forEach(id -> batch.add(node.ethGetBlockByNumber(new DefaultBlockParameterNumber(new BigInteger(id)), true)));
+                return batch;
+            }, EthBlock.Block.class);
+
+            var headers = new ArrayList<EthBlock.Block>(fullBlocks.size());
+            for (var block : fullBlocks) {
+                headers.add(block == null ? null : splitBlock(rpcId, block));
+                if (block != null) {
+                    fetched.put(block.getNumber(), block);
+                }
+            }
+            return headers;
+        }, EthBlock.Block.class, Network.getDefaultMillis(),
+                header -> getTtlMillis(rpcId, rpcUrl, "getBlockByNumber", header.getNumber()),
+                rpcId, "getBlockHeader", CACHE_VERSION, ids);
+    }
+
+    /**
+     * Cache the transactions of a block fetched with full transactions under the keys getTransactionByHash uses. They
+     * are written without reading first, replacing any cached "not found" for them.
+     * @return the block's header, with transaction hashes in place of the transactions
+     */
+    private static EthBlock.Block splitBlock(String rpcId, EthBlock.Block block) {
+        var transactions = block.getTransactions().stream().map(result -> (Transaction) result.get()).toList();
+        if (!transactions.isEmpty()) {
+            var byHash = new HashMap<String, Transaction>();
+            transactions.forEach(transaction -> byHash.put(transaction.getHash(), transaction));
+            Network.putAll(byHash, CachedWeb3::getTtlMillis, rpcId, "getTxByHash", CACHE_VERSION);
+        }
+        return withTransactions(block, transactions.stream().map(transaction -> new EthBlock.TransactionHash(transaction.getHash())).toList());
+    }
+
+    /**
+     * Reassemble a full block from its header and its transactions, fetching any transaction that is missing
+     * @param transactions cached transactions by hash, may be missing some or all of the block's
+     */
+    private static EthBlock.Block hydrate(String rpcId, String rpcUrl, EthBlock.Block header, Map<String, Transaction> transactions) {
+        var hashes = getTransactionHashes(header);
+        var missing = hashes.stream().filter(hash -> transactions.get(hash) == null).toList();
+        if (!missing.isEmpty()) {
+            var found = getTransactionsByHash(rpcId, rpcUrl, missing);
+            for (int i = 0; i < missing.size(); i++) {
+                if (found.get(i) == null) {
+                    logger.error("could not reassemble block " + header.getNumber() + ", transaction " + missing.get(i) + " not found");
+                    return null;
+                }
+                transactions.put(missing.get(i), found.get(i));
+            }
+        }
+
+        var mapper = Network.getObjectMapper();
+        return withTransactions(header, hashes.stream()
+                .map(hash -> mapper.convertValue(transactions.get(hash), EthBlock.TransactionObject.class))
+                .toList());
+    }
+
+    /**
+     * @return the transaction hashes of a block header, which is fetched without its transaction objects
+     */
+    static List<String> getTransactionHashes(EthBlock.Block header) {
+        return header.getTransactions().stream().map(hash -> ((EthBlock.TransactionHash) hash).get()).toList();
+    }
+
+    /**
+     * @return a copy of block with the given transactions, hashes or transaction objects
+     */
+    @SuppressWarnings("rawtypes") // web3j's Block only takes a list of raw TransactionResults
+    private static EthBlock.Block withTransactions(EthBlock.Block block, List<? extends EthBlock.TransactionResult<?>> transactions) {
+        var copy = new EthBlock.Block();
+        copy.setNumber(block.getNumberRaw());
+        copy.setHash(block.getHash());
+        copy.setParentHash(block.getParentHash());
+        copy.setNonce(block.getNonceRaw());
+        copy.setSha3Uncles(block.getSha3Uncles());
+        copy.setLogsBloom(block.getLogsBloom());
+        copy.setTransactionsRoot(block.getTransactionsRoot());
+        copy.setStateRoot(block.getStateRoot());
+        copy.setReceiptsRoot(block.getReceiptsRoot());
+        copy.setAuthor(block.getAuthor());
+        copy.setMiner(block.getMiner());
+        copy.setMixHash(block.getMixHash());
+        copy.setDifficulty(block.getDifficultyRaw());
+        copy.setTotalDifficulty(block.getTotalDifficultyRaw());
+        copy.setExtraData(block.getExtraData());
+        copy.setSize(block.getSizeRaw());
+        copy.setGasLimit(block.getGasLimitRaw());
+        copy.setGasUsed(block.getGasUsedRaw());
+        copy.setTimestamp(block.getTimestampRaw());
+        copy.setTransactions(List.<EthBlock.TransactionResult>copyOf(transactions));
+        copy.setUncles(block.getUncles());
+        copy.setSealFields(block.getSealFields());
+        return copy;
+    }
+
+    private static <T> List<T> sendBatch(String rpcId, String rpcUrl, ThrowingFunction<Web3j, BatchRequest> createBatch, Class<T> clazz) throws Exception {
+        var batchResponse = callRPC(rpcId, rpcUrl, node -> createBatch.apply(node).send());
+
+        // match responses to requests by id, nodes are not required to answer a batch in order
+        var responses = new HashMap<Long, Response<?>>();
+        batchResponse.getResponses().forEach(response -> responses.put(response.getId(), response));
+
+        var results = new ArrayList<T>(batchResponse.getRequests().size());
+        for (var request : batchResponse.getRequests()) {
+            var response = responses.get(request.getId());
+            if (response == null || response.hasError()) {
+                logger.error("error in batch " + request.getMethod() + ": " + (response == null ? "no response" : response.getError().getMessage()));
+                results.add(null);
+            }
+            else {
+                results.add(clazz.cast(response.getResult()));
+            }
+        }
+        return results;
+    }
+
     public static List<String> getTransactionHashesInBlock(String rpcId, String rpcUrl, BigInteger block) {
-        var blockData = getBlockByNumber(rpcId, rpcUrl, block); // this method is cached
+        var blockData = getBlockHeader(rpcId, rpcUrl, block); // this method is cached
         if (blockData == null) {
             logger.error("getTransactionHashesInBlock error - could not get block by number");
             return null;
         }
-        return blockData.getTransactions().stream().map(x -> (Transaction)x.get()).map(Transaction::getHash).toList();
+        return getTransactionHashes(blockData);
     }
 
     public static LocalDateTime getBlockTimestamp(String rpcId, String rpcUrl, BigInteger block) {
-        var blockData = getBlockByNumber(rpcId, rpcUrl, block); // this method is cached
-        if (blockData == null) {
+        var epochSeconds = getBlockEpochSeconds(rpcId, rpcUrl, block.longValueExact());
+        if (epochSeconds == BlockTimestampIndex.UNKNOWN) {
             logger.error("getBlockTimestamp error - could not get block by number");
             return null;
         }
-        return LocalDateTime.ofInstant(Instant.ofEpochSecond(blockData.getTimestamp().longValue()), ZoneId.systemDefault());
+        return LocalDateTime.ofInstant(Instant.ofEpochSecond(epochSeconds), ZoneId.systemDefault());
     }
 
+    /**
+     * Same as the static getBlockTimestamp, kept as an instance method for existing callers
+     */
     public LocalDateTime getBlockDate(String rpcId, String rpcUrl, BigInteger block) {
-        var timestamp = getBlockTimestamp(rpcId, rpcUrl, block);
+        return getBlockTimestamp(rpcId, rpcUrl, block);
+    }
 
-        if(timestamp != null) {
-            Instant instant = Instant.ofEpochMilli(Utils.convertToEpochMillis(timestamp.toString()));
-            return LocalDateTime.ofInstant(instant, ZoneId.systemDefault());
+    /**
+     * The last block with a timestamp at or before time, found by binary search over block timestamps. Probes are
+     * answered from the rpcId's BlockTimestampIndex once seen, so repeated lookups only read the node for new blocks.
+     * @return null if time is before the first block, or if a block on the way could not be read
+     */
+    public static BigInteger getBlockAtOrBefore(String rpcId, String rpcUrl, Instant time) {
+        var head = getHeadBlockNumber(rpcId, rpcUrl);
+        if (head == null) {
+            return null;
         }
-        else {
-            System.out.println("Error retrieving block date");
+
+        var target = time.getEpochSecond();
+        long low = 0;
+        long high = head.longValueExact();
+        var headSeconds = getBlockEpochSeconds(rpcId, rpcUrl, high);
+        var firstSeconds = getBlockEpochSeconds(rpcId, rpcUrl, low);
+        if (headSeconds == BlockTimestampIndex.UNKNOWN || firstSeconds == BlockTimestampIndex.UNKNOWN || firstSeconds > target) {
             return null;
         }
+        if (headSeconds <= target) {
+            return head;
+        }
+
+        // timestamp(low) <= target < timestamp(high)
+        while (high - low > 1) {
+            var middle = (low + high) >>> 1;
+            var seconds = getBlockEpochSeconds(rpcId, rpcUrl, middle);
+            if (seconds == BlockTimestampIndex.UNKNOWN) {
+                logger.error("getBlockAtOrBefore error - could not get block " + middle);
+                return null;
+            }
+            if (seconds <= target) {
+                low = middle;
+            }
+            else {
+                high = middle;
+            }
+        }
+        return BigInteger.valueOf(low);
+    }
+
+    /**
+     * Block timestamp from the timestamp index, read from the (cached) block header and recorded in the index if not
+     * there yet. Blocks that are not final yet are not recorded, as a reorg may still change their timestamp.
+     * @return the timestamp in epoch seconds, or BlockTimestampIndex.UNKNOWN if the block could not be read
+     */
+    private static long getBlockEpochSeconds(String rpcId, String rpcUrl, long block) {
+        var index = BlockTimestampIndex.get(rpcId);
+        var epochSeconds = index.getEpochSeconds(block);
+        if (epochSeconds != BlockTimestampIndex.UNKNOWN) {
+            return epochSeconds;
+        }
+
+        var number = BigInteger.valueOf(block);
+        var header = getBlockHeader(rpcId, rpcUrl, number);
+        if (header == null) {
+            return BlockTimestampIndex.UNKNOWN;
+        }
+        epochSeconds = header.getTimestamp().longValueExact();
+        if (getTtlMillis(rpcId, rpcUrl, "getBlockByNumber", number) == 0) {
+            index.put(block, epochSeconds);
+        }
+        return epochSeconds;
     }
 
     public static BigInteger getTokenIntegerBalance(String rpcId, String rpcUrl, String walletAddress, String tokenAddress, BigInteger block) {
@@ -140,16 +715,16 @@ public class CachedWeb3 {
                 if(StringUtils.isBlank(walletAddress)) {
                     return null;
                 }
-                Function function = new Function("balanceOf", List.of(new Address(tokenAddress)), List.of(new org.web3j.abi.TypeReference<Uint256>() {}));
+                Function function = balanceOf(tokenAddress);
                 String encodedFunction = FunctionEncoder.encode(function);
 
-                var response = getRPCNode(rpcId, rpcUrl).ethCall(createEthCallTransaction(
-                        walletAddress, walletAddress, encodedFunction), DefaultBlockParameter.valueOf(block)).send();
+                var response = callRPC(rpcId, rpcUrl, node -> node.ethCall(createEthCallTransaction(
+                        walletAddress, walletAddress, encodedFunction), DefaultBlockParameter.valueOf(block)).send());
                 var output = FunctionReturnDecoder.decode(response.getValue(), function.getOutputParameters());
 
                 if (!output.isEmpty()) {
                     Uint256 balance = (Uint256) output.get(0);
-                    logger.info("   basic balances worked");
+                    logger.debug("basic balances worked");
                     return balance.getValue();
                 }
             } catch (Exception e) {
@@ -157,23 +732,81 @@ public class CachedWeb3 {
             }
 
             return null;
-        }, BigInteger.class, rpcId, "getTokenBalance", CACHE_VERSION, walletAddress, tokenAddress, String.valueOf(block));
+        }, BigInteger.class, Network.getDefaultMillis(), value -> getTtlMillis(rpcId, rpcUrl, "getTokenBalance", block),
+                rpcId, "getTokenBalance", CACHE_VERSION, walletAddress, tokenAddress, String.valueOf(block));
+    }
+
+    /**
+     * Bulk version of getTokenIntegerBalance: every balance not already cached is read in a single Multicall3
+     * aggregate3 eth_call (per multicallBatchSize queries), and each is cached under the same key
+     * getTokenIntegerBalance uses
+     * @return one balance per query, in the same order as queries, null where the wallet is blank or the balance could
+     * not be read
+     * @throws IllegalArgumentException if a query has an invalid wallet or token address
+     */
+    public static List<BigInteger> getTokenIntegerBalances(String rpcId, String rpcUrl, List<TokenBalanceQuery> queries, BigInteger block) {
+        if (block == null) {
+            throw new IllegalArgumentException("block must not be null");
+        }
+        var queriesById = new HashMap<String, TokenBalanceQuery>();
+        var ids = new ArrayList<String>(queries.size());
+        for (var query : queries) {
+            if (StringUtils.isBlank(query.walletAddress())) {
+                continue;
+            }
+            if (!WalletUtils.isValidAddress(query.walletAddress()) || query.tokenAddress() == null || !WalletUtils.isValidAddress(query.tokenAddress())) {
+                throw new IllegalArgumentException("invalid wallet or token address in " + query);
+            }
+            // the join createRedisKey hashes the separate strings of getTokenIntegerBalance with, addresses being
+            // fixed length once validated
+            var id = Network.joinForHash(query.walletAddress(), query.tokenAddress(), String.valueOf(block));
+            queriesById.put(id, query);
+            ids.add(id);
+        }
+
+        var balances = Network.getCachedOrComputeAllAndWait(missingIds -> {
+            var calls = missingIds.stream()
+                    .map(queriesById::get)
+                    .map(query -> new Multicall.Call(query.walletAddress(), FunctionEncoder.encode(balanceOf(query.tokenAddress()))))
+                    .toList();
+            var returnData = multicall(rpcId, rpcUrl, calls, block);
+
+            var missingBalances = new ArrayList<BigInteger>(calls.size());
+            for (int i = 0; i < calls.size(); i++) {
+                var output = decodeReturnData(returnData.get(i), balanceOf(queriesById.get(missingIds.get(i)).tokenAddress()));
+                missingBalances.add(output == null || output.isEmpty() ? null : ((Uint256) output.get(0)).getValue());
+            }
+            return missingBalances;
+        }, BigInteger.class, Network.getDefaultMillis(), value -> getTtlMillis(rpcId, rpcUrl, "getTokenBalance", block),
+                rpcId, "getTokenBalance", CACHE_VERSION, ids).iterator();
+
+        var results = new ArrayList<BigInteger>(queries.size());
+        for (var query : queries) {
+            results.add(StringUtils.isBlank(query.walletAddress()) ? null : balances.next());
+        }
+        return results;
+    }
+
+    private static Function balanceOf(String address) {
+        return new Function("balanceOf", List.of(new Address(address)), List.of(new org.web3j.abi.TypeReference<Uint256>() {}));
     }
 
     public static BigInteger getEthIntegerBalance(String rpcId, String rpcUrl, BigInteger block, String walletAddress) {
-        return Network.getCachedOrComputeAndWait(() -> getRPCNode(rpcId, rpcUrl).ethGetBalance(walletAddress, DefaultBlockParameter.valueOf(block)).send().getBalance(),
-                BigInteger.class, rpcId, "ethGetBalance", CACHE_VERSION, walletAddress, String.valueOf(block));
+        return Network.getCachedOrComputeAndWait(() -> callRPC(rpcId, rpcUrl, node -> node.ethGetBalance(walletAddress, DefaultBlockParameter.valueOf(block)).send()).getBalance(),
+                BigInteger.class, Network.getDefaultMillis(), value -> getTtlMillis(rpcId, rpcUrl, "ethGetBalance", block),
+                rpcId, "ethGetBalance", CACHE_VERSION, walletAddress, String.valueOf(block));
     }
 
     public static BigInteger getTransactionCount(String rpcId, String rpcUrl, String wallet, BigInteger block) {
         // returns the nonce of the wallet address at block
         return Network.getCachedOrComputeAndWait(() -> {
             try {
-                return getRPCNode(rpcId, rpcUrl).ethGetTransactionCount(wallet, DefaultBlockParameter.valueOf(block)).send().getTransactionCount();
+                return callRPC(rpcId, rpcUrl, node -> node.ethGetTransactionCount(wallet, DefaultBlockParameter.valueOf(block)).send()).getTransactionCount();
             } catch (Exception e) {
                 return null;
             }
-        }, BigInteger.class, rpcId, "ethGetTransactionCount", CACHE_VERSION, wallet, String.valueOf(block));
+        }, BigInteger.class, Network.getDefaultMillis(), value -> getTtlMillis(rpcId, rpcUrl, "ethGetTransactionCount", block),
+                rpcId, "ethGetTransactionCount", CACHE_VERSION, wallet, String.valueOf(block));
     }
 
     public static BigInteger getLatestBlockNumber(String rpcId, String rpcUrl) {
@@ -189,7 +822,7 @@ public class CachedWeb3 {
         if (redisStateId == 0) {
             // do not cache
             try {
-                return getRPCNode(rpcId, rpcUrl).ethBlockNumber().send().getBlockNumber();
+                return callRPC(rpcId, rpcUrl, node -> node.ethBlockNumber().send()).getBlockNumber();
             } catch (Exception ignored) {
                 logger.error("getLatestBlockNumber error - could not get block number");
                 return null;
@@ -199,7 +832,7 @@ public class CachedWeb3 {
             // cache
             return Network.getCachedOrComputeAndWait(() -> {
                 try {
-                    return getRPCNode(rpcId, rpcUrl).ethBlockNumber().send().getBlockNumber();
+                    return callRPC(rpcId, rpcUrl, node -> node.ethBlockNumber().send()).getBlockNumber();
                 } catch (Exception ignored) {
                     return null;
                 }
@@ -207,14 +840,301 @@ public class CachedWeb3 {
         }
     }
 
+    /**
+     * Latest block number, cached for at most maxAge so that frequent callers share one eth_blockNumber call
+     */
+    public static BigInteger getLatestBlockNumber(String rpcId, String rpcUrl, Duration maxAge) {
+        return Network.getCachedOrComputeAndWait(() -> callRPC(rpcId, rpcUrl, node -> node.ethBlockNumber().send()).getBlockNumber(),
+                BigInteger.class, 0, Math.max(1, maxAge.toMillis()), rpcId, "getLatestBlockNumberTtl", CACHE_VERSION);
+    }
+
+    /**
+     * Blocks are cached normalised: the header with its ordered transaction hashes under getBlockHeader, and each
+     * transaction under the key getTransactionByHash uses, so fetching a block also serves later transaction lookups
+     * and no transaction body is stored twice.
+     * @return the block with full transactions, reassembled from the cache where possible
+     */
     public static EthBlock.Block getBlockByNumber(String rpcId, String rpcUrl, BigInteger block) {
+        var fetched = new AtomicReference<EthBlock.Block>();
+        var header = Network.getCachedOrComputeAndWait(() -> {
+                    var dp = new DefaultBlockParameterNumber(block);
+                    var result = callRPC(rpcId, rpcUrl, node -> node.ethGetBlockByNumber(dp, true).send()).getBlock();
+                    fetched.set(result);
+                    return result == null ? null : splitBlock(rpcId, result);
+                },
+                EthBlock.Block.class, Network.getDefaultMillis(), value -> getTtlMillis(rpcId, rpcUrl, "getBlockByNumber", block),
+                rpcId, "getBlockHeader", CACHE_VERSION, String.valueOf(block));
+
+        if (header == null || fetched.get() != null) {
+            return fetched.get();
+        }
+        return hydrate(rpcId, rpcUrl, header, new HashMap<>());
+    }
+
+    /**
+     * The block without its transaction bodies, for callers that only need header fields or transaction hashes.
+     * getTransactions() holds TransactionHash results. Fetched from the node without transactions if not cached.
+     */
+    public static EthBlock.Block getBlockHeader(String rpcId, String rpcUrl, BigInteger block) {
         return Network.getCachedOrComputeAndWait(() -> {
-                    var node = getRPCNode(rpcId, rpcUrl);
                     var dp = new DefaultBlockParameterNumber(block);
-                    var result = node.ethGetBlockByNumber(dp, true).send();
-                    return result.getBlock();
+                    return callRPC(rpcId, rpcUrl, node -> node.ethGetBlockByNumber(dp, false).send()).getBlock();
                 },
-                EthBlock.Block.class, rpcId, "getBlockByNumber", CACHE_VERSION, String.valueOf(block));
+                EthBlock.Block.class, Network.getDefaultMillis(), value -> getTtlMillis(rpcId, rpcUrl, "getBlockByNumber", block),
+                rpcId, "getBlockHeader", CACHE_VERSION, String.valueOf(block));
+    }
+
+    /**
+     * Cached eth_call of an arbitrary contract function at a block
+     * @return the decoded outputs of the function, or null if the call failed
+     */
+    public static List<Type<?>> ethCall(String rpcId, String rpcUrl, ContractCall call, BigInteger block) {
+        var callData = FunctionEncoder.encode(call.function());
+        var returnData = Network.getCachedOrComputeAndWait(() -> ethCallReturnData(rpcId, rpcUrl, call.contract(), callData, block), String.class, Network.getDefaultMillis(), value -> getTtlMillis(rpcId, rpcUrl, "ethCall", block),
+                rpcId, "ethCall", CACHE_VERSION, call.contract(), callData, String.valueOf(block));
+        return decodeReturnData(returnData, call.function());
+    }
+
+    /**
+     * Bulk version of ethCall: calls not already cached are packed into Multicall3 aggregate3 eth_calls, and each
+     * result is cached under the same key ethCall uses
+     * @return the decoded outputs of each call, in the same order as calls, null where a call failed
+     */
+    public static List<List<Type<?>>> ethCalls(String rpcId, String rpcUrl, List<ContractCall> calls, BigInteger block) {
+        var callsById = new HashMap<String, Multicall.Call>();
+        var ids = new ArrayList<String>(calls.size());
+        for (var call : calls) {
+            var multicallCall = new Multicall.Call(call.contract(), FunctionEncoder.encode(call.function()));
+            var id = multicallCall.target() + multicallCall.callData() + block;
+            callsById.put(id, multicallCall);
+            ids.add(id);
+        }
+
+        var returnData = Network.getCachedOrComputeAllAndWait(missingIds -> multicall(rpcId, rpcUrl, missingIds.stream().map(callsById::get).toList(), block),
+                String.class, Network.getDefaultMillis(), value -> getTtlMillis(rpcId, rpcUrl, "ethCall", block),
+                rpcId, "ethCall", CACHE_VERSION, ids);
+
+        var results = new ArrayList<List<Type<?>>>(calls.size());
+        for (int i = 0; i < calls.size(); i++) {
+            results.add(decodeReturnData(returnData.get(i), calls.get(i).function()));
+        }
+        return results;
+    }
+
+    /**
+     * Run calls through Multicall3's aggregate3, split into chunks of multicallBatchSize. A chunk whose response cannot
+     * be used (e.g. there is no Multicall3 at the address, so it returns no data) is run as individual eth_calls, so
+     * there is always one result per call.
+     * @return the raw return data of each call, in the same order as calls, null where the call failed
+     */
+    private static List<String> multicall(String rpcId, String rpcUrl, List<Multicall.Call> calls, BigInteger block) throws Exception {
+        var address = getMulticallAddress(rpcId);
+        var results = new ArrayList<String>(calls.size());
+
+        for (int from = 0; from < calls.size(); from += multicallBatchSize) {
+            var chunk = calls.subList(from, Math.min(calls.size(), from + multicallBatchSize));
+            var chunkResults = aggregate3(rpcId, rpcUrl, address, chunk, block);
+            if (chunkResults == null) {
+                logger.warn("multicall at {} unusable for {} calls, making them one by one", address, chunk.size());
+                chunkResults = new ArrayList<>(chunk.size());
+                for (var call : chunk) {
+                    chunkResults.add(ethCallReturnData(rpcId, rpcUrl, call.target(), call.callData(), block));
+                }
+            }
+            results.addAll(chunkResults);
+        }
+        return results;
+    }
+
+    /**
+     * @return the return data of each call, null where a call failed, or null if the response does not hold exactly
+     * one result per call
+     */
+    private static List<String> aggregate3(String rpcId, String rpcUrl, String address, List<Multicall.Call> calls, BigInteger block) throws Exception {
+        var returnData = ethCallReturnData(rpcId, rpcUrl, address, Multicall.encodeAggregate3(calls), block);
+        if (returnData == null) {
+            return null;
+        }
+        List<Multicall.Result> decoded;
+        try {
+            decoded = Multicall.decodeAggregate3(returnData);
+        } catch (RuntimeException e) {
+            return null;
+        }
+        if (decoded.size() != calls.size()) {
+            return null;
+        }
+        return decoded.stream().map(result -> result.success() ? result.returnData() : null).toList();
+    }
+
+    /**
+     * @return the raw return data of an eth_call of callData on contract at block, or null if the call reverted
+     * @throws IOException if the node failed to run the call (rate limited, timed out, ...), so that the failure is
+     * retried and never cached as a revert
+     */
+    private static String ethCallReturnData(String rpcId, String rpcUrl, String contract, String callData, BigInteger block) throws Exception {
+        var response = callRPC(rpcId, rpcUrl, node -> node.ethCall(createEthCallTransaction(contract, contract, callData), DefaultBlockParameter.valueOf(block)).send());
+        if (response.hasError() && !isExecutionReverted(response.getError())) {
+            throw new IOException("eth_call to " + contract + " failed: " + response.getError().getCode() + " " + response.getError().getMessage());
+        }
+        if (response.isReverted()) {
+            logger.debug("eth_call to {} reverted: {}", contract, response.getRevertReason());
+            return null;
+        }
+        return response.getValue();
+    }
+
+    /**
+     * Whether an eth_call error says the call itself reverted, in the wording of the common clients (geth and most
+     * others use code 3), as opposed to the node failing to run it
+     */
+    static boolean isExecutionReverted(Response.Error error) {
+        if (error.getCode() == 3) {
+            return true;
+        }
+        var lower = error.getMessage() == null ? "" : error.getMessage().toLowerCase();
+        return lower.contains("revert") || lower.contains("vm execution error") || lower.contains("invalid opcode");
+    }
+
+    private static List<Type<?>> decodeReturnData(String returnData, Function function) {
+        if (returnData == null) {
+            return null;
+        }
+        var output = new ArrayList<Type<?>>();
+        for (Type<?> type : FunctionReturnDecoder.decode(returnData, function.getOutputParameters())) {
+            output.add(type);
+        }
+        return output.isEmpty() ? null : output;
+    }
+
+    /**
+     * Logs matching filter in blocks fromBlock to toBlock inclusive, in block order. The range is fetched and cached
+     * in aligned chunks of DEFAULT_LOG_CHUNK_SIZE blocks, in parallel (see LogRangeFetcher to stream or for more control)
+     * @throws IllegalStateException if the logs of part of the range could not be fetched
+     */
+    public static List<Log> getLogs(String rpcId, String rpcUrl, LogFilter filter, BigInteger fromBlock, BigInteger toBlock) {
+        try (var logs = new LogRangeFetcher(rpcId, rpcUrl, filter).stream(fromBlock, toBlock)) {
+            return logs.toList();
+        }
+    }
+
+    /**
+     * The logs of one chunk: blocks chunkStart to chunkStart + chunkSize - 1, cut off at head. A chunk that reaches
+     * past head is incomplete, so whatever the confirmation depth it is only cached for the near-head TTL of getLogs.
+     * @return the logs, or null if they could not be fetched
+     */
+    static Log[] getLogChunk(String rpcId, String rpcUrl, LogFilter filter, BigInteger chunkStart, int chunkSize, BigInteger head) {
+        var chunkEnd = chunkStart.add(BigInteger.valueOf(chunkSize - 1));
+        var complete = head == null || chunkEnd.compareTo(head) <= 0;
+        var toBlock = complete ? chunkEnd : head;
+        ToLongFunction<Log[]> ttlMillis = logs -> head != null && complete
+                ? getTtlMillis(rpcId, rpcUrl, "getLogs", chunkEnd)
+                : nearHeadTtls.getOrDefault("getLogs", DEFAULT_NEAR_HEAD_TTL_MILLIS);
+
+        return Network.getCachedOrComputeAndWait(() -> fetchLogs(rpcId, rpcUrl, filter, chunkStart, toBlock).toArray(Log[]::new),
+                Log[].class, Network.getDefaultMillis(), ttlMillis,
+                rpcId, "getLogs", CACHE_VERSION, filter.addressKey(), filter.topicKey(), String.valueOf(chunkStart), String.valueOf(chunkSize));
+    }
+
+    /**
+     * eth_getLogs over fromBlock to toBlock, halving the range whenever the node refuses it as too wide or as
+     * matching too many logs
+     */
+    private static List<Log> fetchLogs(String rpcId, String rpcUrl, LogFilter filter, BigInteger fromBlock, BigInteger toBlock) throws Exception {
+        String error;
+        try {
+            var response = callRPC(rpcId, rpcUrl, node -> node.ethGetLogs(filter.toEthFilter(fromBlock, toBlock)).send());
+            if (!response.hasError()) {
+                return response.getLogs().stream().map(result -> (Log) result.get()).toList();
+            }
+            error = response.getError().getMessage();
+        } catch (IOException e) {
+            // some providers refuse with an HTTP error status rather than a JSON-RPC error
+            if (!isRangeTooLarge(e.getMessage())) {
+                throw e;
+            }
+            error = e.getMessage();
+        }
+
+        if (!isRangeTooLarge(error) || fromBlock.equals(toBlock)) {
+            throw new IOException("getLogs error for blocks " + fromBlock + " to " + toBlock + ": " + error);
+        }
+
+        var middle = fromBlock.add(toBlock).shiftRight(1);
+        logger.debug("getLogs range " + fromBlock + " to " + toBlock + " refused, splitting at " + middle + ": " + error);
+        var logs = new ArrayList<>(fetchLogs(rpcId, rpcUrl, filter, fromBlock, middle));
+        logs.addAll(fetchLogs(rpcId, rpcUrl, filter, middle.add(BigInteger.ONE), toBlock));
+        return logs;
+    }
+
+    /**
+     * Whether an eth_getLogs error message says the block range or result set was too large, in the wording of the
+     * common clients and providers (several of which reuse the -32005 rate limit code for it)
+     */
+    static boolean isRangeTooLarge(String message) {
+        if (message == null) {
+            return false;
+        }
+        var lower = message.toLowerCase();
+        return lower.contains("returned more than") || lower.contains("too many results") || lower.contains("response size")
+                || lower.contains("block range") || lower.contains("range too large") || lower.contains("range is too large")
+                || lower.contains("too wide") || lower.contains("is limited to");
+    }
+
+    /**
+     * Blocks fromBlock to toBlock inclusive, in order, fetched in parallel (see BlockRangeFetcher for more control)
+     * @return a stream to close when done, holding null for any block that could not be fetched
+     */
+    public static Stream<EthBlock.Block> streamBlocks(String rpcId, String rpcUrl, BigInteger fromBlock, BigInteger toBlock) {
+        return new BlockRangeFetcher(rpcId, rpcUrl).stream(fromBlock, toBlock).map(BlockRangeFetcher.FetchedBlock::block);
+    }
+
+    /**
+     * Asynchronous twins of the cached Web3 convenience methods, run on Network's virtual-thread executor
+     */
+
+    public static CompletableFuture<Transaction> getTransactionByHashAsync(String rpcId, String rpcUrl, String hash) {
+        return Network.supplyAsync(() -> getTransactionByHash(rpcId, rpcUrl, hash));
+    }
+
+    public static CompletableFuture<TransactionReceipt> getReceiptByHashAsync(String rpcId, String rpcUrl, String hash) {
+        return Network.supplyAsync(() -> getReceiptByHash(rpcId, rpcUrl, hash));
+    }
+
+    public static CompletableFuture<List<Transaction>> getTransactionsByHashAsync(String rpcId, String rpcUrl, List<String> hashes) {
+        return Network.supplyAsync(() -> getTransactionsByHash(rpcId, rpcUrl, hashes));
+    }
+
+    public static CompletableFuture<List<TransactionReceipt>> getReceiptsByHashAsync(String rpcId, String rpcUrl, List<String> hashes) {
+        return Network.supplyAsync(() -> getReceiptsByHash(rpcId, rpcUrl, hashes));
+    }
+
+    public static CompletableFuture<List<String>> getTransactionHashesInBlockAsync(String rpcId, String rpcUrl, BigInteger block) {
+        return Network.supplyAsync(() -> getTransactionHashesInBlock(rpcId, rpcUrl, block));
+    }
+
+    public static CompletableFuture<LocalDateTime> getBlockTimestampAsync(String rpcId, String rpcUrl, BigInteger block) {
+        return Network.supplyAsync(() -> getBlockTimestamp(rpcId, rpcUrl, block));
+    }
+
+    public static CompletableFuture<BigInteger> getTokenIntegerBalanceAsync(String rpcId, String rpcUrl, String walletAddress, String tokenAddress, BigInteger block) {
+        return Network.supplyAsync(() -> getTokenIntegerBalance(rpcId, rpcUrl, walletAddress, tokenAddress, block));
+    }
+
+    public static CompletableFuture<BigInteger> getEthIntegerBalanceAsync(String rpcId, String rpcUrl, BigInteger block, String walletAddress) {
+        return Network.supplyAsync(() -> getEthIntegerBalance(rpcId, rpcUrl, block, walletAddress));
+    }
+
+    public static CompletableFuture<BigInteger> getTransactionCountAsync(String rpcId, String rpcUrl, String wallet, BigInteger block) {
+        return Network.supplyAsync(() -> getTransactionCount(rpcId, rpcUrl, wallet, block));
+    }
+
+    public static CompletableFuture<BigInteger> getLatestBlockNumberAsync(String rpcId, String rpcUrl, int redisStateId) {
+        return Network.supplyAsync(() -> getLatestBlockNumber(rpcId, rpcUrl, redisStateId));
+    }
+
+    public static CompletableFuture<EthBlock.Block> getBlockByNumberAsync(String rpcId, String rpcUrl, BigInteger block) {
+        return Network.supplyAsync(() -> getBlockByNumber(rpcId, rpcUrl, block));
     }
 
     /**
@@ -257,7 +1177,7 @@ public class CachedWeb3 {
             String encodedFunction = FunctionEncoder.encode(function);
             EthCall response;
             try {
-                response = getRPCNode(chainId, rpcUrl).ethCall(createEthCallTransaction(contract, contract, encodedFunction), block).send();
+                response = callRPC(chainId, rpcUrl, node -> node.ethCall(createEthCallTransaction(contract, contract, encodedFunction), block).send());
             } catch (Exception e) {
                 return null;
             }
@@ -268,6 +1188,7 @@ public class CachedWeb3 {
             } else {
                 return (T) output.get(0);
             }
-        }, clazz, chainId, "generalGetCachedOrRetrieveAndWait", CACHE_VERSION, contract, block.toString(), funcName, index.toString(), clazz.getName());
+        }, clazz, Network.getDefaultMillis(), value -> getTtlMillis(chainId, rpcUrl, "generalGetCachedOrRetrieveAndWait", block),
+                chainId, "generalGetCachedOrRetrieveAndWait", CACHE_VERSION, contract, block.toString(), funcName, index.toString(), clazz.getName());
     }
 }
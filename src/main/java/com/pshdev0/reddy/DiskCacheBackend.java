@@ -0,0 +1,994 @@
+package com.pshdev0.reddy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32C;
+
+/**
+ * Embedded cache backend persisted in a directory, for running without a Redis server (single-node jobs, CI).
+ *
+ * Values are appended to a segment file that is never modified in place, and found through an open-addressing hash
+ * index of the keys in a second file. Both files are memory-mapped, so a warm read is a hash probe and a copy out of
+ * the page cache, or no copy at all with getBuffer. Readers take no lock: index slots are published with release
+ * stores after the record they point at is written, and a reader that raced a resize or compaction keeps reading the
+ * previous mappings, which stay valid until it lets go of them.
+ *
+ * Writers are serialised. Overwritten, deleted and expired records are dropped by compaction, which rewrites the live
+ * records into a new segment in the background once at least half of a segment of minCompactionBytes or more is
+ * garbage; writers wait for it, readers do not. The index is rebuilt from the segment if the backend was not closed
+ * cleanly. Writes are not synced to disk one by one, so like Redis without appendfsync a power loss may lose the
+ * latest of them.
+ */
+public class DiskCacheBackend implements CacheBackend {
+
+    private static final Logger logger = LoggerFactory.getLogger(DiskCacheBackend.class);
+
+    public static final int DEFAULT_CHUNK_SIZE = 64 << 20;
+    public static final long DEFAULT_MIN_COMPACTION_BYTES = 64L << 20;
+    // how often writes may schedule a sweep that counts expired records as garbage
+    private static final long SWEEP_INTERVAL_MILLIS = 60_000;
+
+    private static final int SEGMENT_MAGIC = 0x52445347;
+    private static final int INDEX_MAGIC = 0x52444958;
+    private static final int VERSION = 1;
+    private static final int SEGMENT_HEADER_SIZE = 16;
+    private static final int INDEX_HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 16;
+    private static final int MIN_INDEX_SLOTS = 1 << 16;
+    // the index is mapped in regions of 1GiB, up to 16GiB: 2^29 live keys at the most
+    private static final int REGION_SLOT_BITS = 26;
+    private static final int MAX_INDEX_SLOTS = 1 << 30;
+    private static final String INDEX_FILE = "index.idx";
+    private static final String LOCK_FILE = "lock";
+
+    // record: length of the rest (int), crc32c of what follows it (int), type (byte), expiresAt (long), key length
+    // (short), key, value. A length of SKIP pads the rest of a chunk, a length of 0 is the end of the segment.
+    private static final int RECORD_HEADER_SIZE = 4 + 4 + 1 + 8 + 2;
+    private static final int SKIP = -1;
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+
+    private static final long EMPTY = 0;
+    private static final long DELETED = -1;
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private record State(Segment segment, Index index) { }
+
+    private final Path directory;
+    private final int chunkSize;
+    private final long minCompactionBytes;
+    private final Object writeLock = new Object();
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+        var thread = new Thread(r, "reddy-disk-compaction");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+    private final FileLock directoryLock;
+
+    private volatile State state;
+    private long garbageBytes;
+    private long nextSweepAt;
+
+    public DiskCacheBackend(Path directory) throws IOException {
+        this(directory, DEFAULT_CHUNK_SIZE, DEFAULT_MIN_COMPACTION_BYTES);
+    }
+
+    /**
+     * @param chunkSize          the segment is mapped in chunks of this many bytes, which also bounds the size of a
+     *                           single entry. Must stay the same for a directory.
+     * @param minCompactionBytes do not compact segments smaller than this
+     */
+    public DiskCacheBackend(Path directory, int chunkSize, long minCompactionBytes) throws IOException {
+        if (chunkSize < 4096) {
+            throw new IllegalArgumentException("chunkSize must be at least 4096");
+        }
+        this.directory = directory;
+        this.chunkSize = chunkSize;
+        this.minCompactionBytes = minCompactionBytes;
+        Files.createDirectories(directory);
+        this.directoryLock = lockDirectory(directory);
+        try {
+            this.state = open();
+        } catch (IOException | RuntimeException e) {
+            directoryLock.channel().close();
+            throw e;
+        }
+    }
+
+    /**
+     * Only one backend, in this or any other process, may use a directory at a time
+     */
+    private static FileLock lockDirectory(Path directory) throws IOException {
+        var channel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        }
+        if (lock == null) {
+            channel.close();
+            throw new IOException(directory + " is already in use by another DiskCacheBackend");
+        }
+        return lock;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return a read-only view of the stored value straight out of the mapped segment, or null if there is none. The
+     * view stays valid after the value is overwritten or compacted away.
+     */
+    public ByteBuffer getBuffer(String key) {
+        var state = getState();
+        var location = find(state, key.getBytes(StandardCharsets.UTF_8));
+        if (location < 0) {
+            return null;
+        }
+        var record = state.segment().record(location);
+        if (isExpired(record.getLong(9), System.currentTimeMillis())) {
+            return null;
+        }
+        return value(record).asReadOnlyBuffer();
+    }
+
+    @Override
+    public byte[] get(String key) {
+        var buffer = getBuffer(key);
+        if (buffer == null) {
+            return null;
+        }
+        var value = new byte[buffer.remaining()];
+        buffer.get(value);
+        return value;
+    }
+
+    @Override
+    public void set(String key, byte[] value, long ttlMillis) {
+        synchronized (writeLock) {
+            put(key.getBytes(StandardCharsets.UTF_8), value, expiresAt(ttlMillis));
+            maybeCompact();
+        }
+    }
+
+    @Override
+    public boolean setIfAbsent(String key, String value, long ttlMillis) {
+        synchronized (writeLock) {
+            if (getBuffer(key) != null) {
+                return false;
+            }
+            put(key.getBytes(StandardCharsets.UTF_8), value.getBytes(StandardCharsets.UTF_8), expiresAt(ttlMillis));
+            maybeCompact();
+        }
+        return true;
+    }
+
+    @Override
+    public List<byte[]> mget(List<String> keys) {
+        var values = new ArrayList<byte[]>(keys.size());
+        for (var key : keys) {
+            values.add(get(key));
+        }
+        return values;
+    }
+
+    @Override
+    public void mset(Map<String, byte[]> values, long ttlMillis) {
+        var expiresAt = expiresAt(ttlMillis);
+        synchronized (writeLock) {
+            values.forEach((key, value) -> put(key.getBytes(StandardCharsets.UTF_8), value, expiresAt));
+            maybeCompact();
+        }
+    }
+
+    @Override
+    public void del(String key) {
+        var keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        synchronized (writeLock) {
+            var state = getState();
+            var slot = findSlot(state, keyBytes, hash(keyBytes));
+            if (slot < 0) {
+                return;
+            }
+            var previous = state.index().location(slot);
+            // the tombstone is only read when the index is rebuilt from the segment
+            var tombstone = state.segment().append(DELETE, 0, keyBytes, new byte[0]);
+            state.index().setLocation(slot, DELETED);
+            garbageBytes += state.segment().recordSize(previous) + state.segment().recordSize(tombstone);
+            maybeCompact();
+        }
+    }
+
+    @Override
+    public boolean delIfEquals(String key, String value) {
+        synchronized (writeLock) {
+            var current = get(key);
+            if (current == null || !Arrays.equals(current, value.getBytes(StandardCharsets.UTF_8))) {
+                return false;
+            }
+            del(key);
+            return true;
+        }
+    }
+
+    @Override
+    public void forEach(String keyPrefix, EntryVisitor visitor) throws Exception {
+        var state = getState();
+        var index = state.index();
+        var now = System.currentTimeMillis();
+        for (int slot = 0; slot < index.capacity(); slot++) {
+            var location = index.location(slot);
+            if (index.hash(slot) == EMPTY || location == DELETED) {
+                continue;
+            }
+            var record = state.segment().record(location);
+            var expiresAt = record.getLong(9);
+            var key = StandardCharsets.UTF_8.decode(key(record)).toString();
+            if (isExpired(expiresAt, now) || !key.startsWith(keyPrefix)) {
+                continue;
+            }
+            var buffer = value(record);
+            var value = new byte[buffer.remaining()];
+            buffer.get(value);
+            visitor.visit(key, value, expiresAt > 0 ? Math.max(1, expiresAt - now) : 0);
+        }
+    }
+
+    /**
+     * Rewrite the live, unexpired entries into a new segment and delete the old one. Runs by itself in the background
+     * once enough of the segment is garbage.
+     */
+    public void compact() throws IOException {
+        synchronized (writeLock) {
+            var old = getState();
+            var start = System.nanoTime();
+            var generation = old.segment().generation() + 1;
+            var tmpPath = directory.resolve(segmentFileName(generation) + ".tmp");
+            var indexTmpPath = directory.resolve(INDEX_FILE + ".tmp");
+            Files.deleteIfExists(tmpPath);
+            var segment = Segment.create(tmpPath, generation, chunkSize);
+            // built next to the live index and moved over it, readers keep the old mapping until they are done
+            var index = Index.create(indexTmpPath, indexSlotsFor(old.index().live()), generation);
+
+            var now = System.currentTimeMillis();
+            var oldIndex = old.index();
+            for (int slot = 0; slot < oldIndex.capacity(); slot++) {
+                var hash = oldIndex.hash(slot);
+                var location = oldIndex.location(slot);
+                if (hash == EMPTY || location == DELETED) {
+                    continue;
+                }
+                var record = old.segment().record(location);
+                if (isExpired(record.getLong(9), now)) {
+                    continue;
+                }
+                index.insert(hash, segment.copy(record));
+            }
+
+            segment.force();
+            var path = directory.resolve(segmentFileName(generation));
+            Files.move(tmpPath, path, StandardCopyOption.ATOMIC_MOVE);
+            segment = segment.renamed(path);
+            index.writeHeader(segment.end(), 0, false);
+            index.force();
+            var indexPath = directory.resolve(INDEX_FILE);
+            Files.move(indexTmpPath, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            index = index.renamed(indexPath);
+
+            var oldSize = old.segment().end();
+            state = new State(segment, index);
+            garbageBytes = 0;
+            old.segment().closeChannel();
+            old.index().closeChannel();
+            Files.deleteIfExists(old.segment().path());
+            logger.info("compacted " + directory + " from " + oldSize + " to " + segment.end() + " bytes in "
+                    + (System.nanoTime() - start) / 1_000_000 + "ms");
+        }
+    }
+
+    @Override
+    public void close() {
+        compactor.shutdown();
+        synchronized (writeLock) {
+            var state = this.state;
+            if (state == null) {
+                return;
+            }
+            this.state = null;
+            try {
+                state.segment().force();
+                state.index().writeHeader(state.segment().end(), garbageBytes, true);
+                state.index().force();
+                state.segment().closeChannel();
+                state.index().closeChannel();
+                directoryLock.channel().close();
+            } catch (IOException e) {
+                logger.error("could not close " + directory + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private State getState() {
+        var state = this.state;
+        if (state == null) {
+            throw new IllegalStateException("DiskCacheBackend " + directory + " is closed");
+        }
+        return state;
+    }
+
+    /**
+     * Open the newest segment in the directory (or create one) and its index, rebuilding the index from the segment
+     * if it was not closed cleanly
+     */
+    private State open() throws IOException {
+        long generation = -1;
+        var stale = new ArrayList<Path>();
+        try (var files = Files.list(directory)) {
+            for (var path : files.toList()) {
+                var name = path.getFileName().toString();
+                if (name.endsWith(".tmp")) {
+                    stale.add(path);
+                }
+                else if (name.startsWith("segment-") && name.endsWith(".log")) {
+                    generation = Math.max(generation, Long.parseLong(name.substring(8, name.length() - 4)));
+                }
+            }
+        }
+        for (var path : stale) {
+            Files.delete(path);
+        }
+
+        if (generation < 0) {
+            var segment = Segment.create(directory.resolve(segmentFileName(0)), 0, chunkSize);
+            var index = Index.create(directory.resolve(INDEX_FILE), MIN_INDEX_SLOTS, 0);
+            index.writeHeader(segment.end(), 0, false);
+            return new State(segment, index);
+        }
+
+        // an older segment left behind by a compaction that was interrupted after its rename
+        for (long g = 0; g < generation; g++) {
+            Files.deleteIfExists(directory.resolve(segmentFileName(g)));
+        }
+
+        var indexPath = directory.resolve(INDEX_FILE);
+        var index = Files.exists(indexPath) ? Index.open(indexPath) : null;
+        if (index != null && index.isClean() && index.generation() == generation) {
+            var segment = Segment.open(directory.resolve(segmentFileName(generation)), generation, chunkSize, index.segmentEnd());
+            garbageBytes = index.garbageBytes();
+            index.writeHeader(segment.end(), garbageBytes, false);
+            return new State(segment, index);
+        }
+        if (index != null) {
+            index.closeChannel();
+        }
+
+        logger.warn(directory + " was not closed cleanly, rebuilding its index");
+        var segment = Segment.open(directory.resolve(segmentFileName(generation)), generation, chunkSize, -1);
+        return new State(segment, rebuildIndex(segment));
+    }
+
+    private Index rebuildIndex(Segment segment) throws IOException {
+        var tmpPath = directory.resolve(INDEX_FILE + ".tmp");
+        var index = Index.create(tmpPath, MIN_INDEX_SLOTS, segment.generation());
+        var rebuilding = new State(segment, index);
+        garbageBytes = 0;
+
+        for (var location = segment.first(); location < segment.end(); location = segment.next(location)) {
+            var record = segment.record(location);
+            var keyBytes = new byte[record.getShort(17) & 0xffff];
+            key(record).get(keyBytes);
+            var hash = hash(keyBytes);
+            var slot = findSlot(rebuilding, keyBytes, hash);
+            if (slot >= 0) {
+                garbageBytes += segment.recordSize(index.location(slot));
+            }
+
+            if (record.get(8) == DELETE || isExpired(record.getLong(9), System.currentTimeMillis())) {
+                garbageBytes += segment.recordSize(location);
+                if (slot >= 0) {
+                    index.setLocation(slot, DELETED);
+                }
+            }
+            else if (slot >= 0) {
+                index.setLocation(slot, location);
+            }
+            else {
+                if (index.isFull()) {
+                    var grown = Index.create(directory.resolve(INDEX_FILE + ".grow.tmp"), indexSlotsFor(index.live() + 1), segment.generation());
+                    grown.copyFrom(index);
+                    index.closeChannel();
+                    Files.move(grown.path(), tmpPath, StandardCopyOption.REPLACE_EXISTING);
+                    index = grown.renamed(tmpPath);
+                    rebuilding = new State(segment, index);
+                }
+                index.insert(hash, location);
+            }
+        }
+
+        index.writeHeader(segment.end(), garbageBytes, false);
+        var path = directory.resolve(INDEX_FILE);
+        Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return index.renamed(path);
+    }
+
+    /**
+     * Append a value and point its key's slot at it. Called holding writeLock.
+     */
+    private void put(byte[] keyBytes, byte[] value, long expiresAt) {
+        var state = getState();
+        var hash = hash(keyBytes);
+        var slot = findSlot(state, keyBytes, hash);
+        if (slot >= 0) {
+            var location = state.segment().append(PUT, expiresAt, keyBytes, value);
+            garbageBytes += state.segment().recordSize(state.index().location(slot));
+            state.index().setLocation(slot, location);
+            return;
+        }
+
+        // make room first, so that a full index fails the put before anything is appended
+        if (state.index().isFull()) {
+            state = growIndex(state);
+        }
+        state.index().insert(hash, state.segment().append(PUT, expiresAt, keyBytes, value));
+    }
+
+    /**
+     * Rebuild the index with room for one more key, dropping its deleted slots
+     * @return the new state
+     */
+    private State growIndex(State state) {
+        try {
+            var tmpPath = directory.resolve(INDEX_FILE + ".tmp");
+            var index = Index.create(tmpPath, indexSlotsFor(state.index().live() + 1), state.segment().generation());
+            index.copyFrom(state.index());
+            index.writeHeader(state.segment().end(), garbageBytes, false);
+            var path = directory.resolve(INDEX_FILE);
+            Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            var grown = new State(state.segment(), index.renamed(path));
+            this.state = grown;
+            state.index().closeChannel();
+            return grown;
+        } catch (IOException e) {
+            throw new UncheckedIOException("could not grow the index of " + directory, e);
+        }
+    }
+
+    /**
+     * Schedule a compaction if enough of the segment is garbage, first sweeping for expired records if none was done
+     * in the last SWEEP_INTERVAL_MILLIS. Called holding writeLock.
+     */
+    private void maybeCompact() {
+        var end = getState().segment().end();
+        var now = System.currentTimeMillis();
+        var sweep = now >= nextSweepAt;
+        if (end < minCompactionBytes || (!sweep && garbageBytes * 2 < end)) {
+            return;
+        }
+        if (compactionScheduled.compareAndSet(false, true)) {
+            if (sweep) {
+                nextSweepAt = now + SWEEP_INTERVAL_MILLIS;
+            }
+            compactor.execute(() -> {
+                try {
+                    synchronized (writeLock) {
+                        if (state != null) {
+                            if (sweep) {
+                                sweepExpired();
+                            }
+                            if (garbageBytes * 2 >= state.segment().end()) {
+                                compact();
+                            }
+                        }
+                    }
+                } catch (IOException | RuntimeException e) {
+                    logger.error("compaction of " + directory + " failed: " + e.getMessage());
+                } finally {
+                    compactionScheduled.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * Drop expired records from the index and count them as garbage, as nothing else does until their keys are written
+     * again. Called holding writeLock.
+     */
+    private void sweepExpired() {
+        var state = getState();
+        var index = state.index();
+        var now = System.currentTimeMillis();
+        for (int slot = 0; slot < index.capacity(); slot++) {
+            var location = index.location(slot);
+            if (index.hash(slot) == EMPTY || location == DELETED) {
+                continue;
+            }
+            // no tombstone is needed, a rebuild drops the record as expired too
+            if (isExpired(state.segment().record(location).getLong(9), now)) {
+                index.setLocation(slot, DELETED);
+                garbageBytes += state.segment().recordSize(location);
+            }
+        }
+    }
+
+    /**
+     * @return the location of key's live record, or -1 if it has none
+     */
+    private static long find(State state, byte[] keyBytes) {
+        var slot = findSlot(state, keyBytes, hash(keyBytes));
+        return slot < 0 ? -1 : state.index().location(slot);
+    }
+
+    /**
+     * Linear probe for the slot holding key
+     * @return the slot, or -1 if key is not in the index
+     */
+    private static int findSlot(State state, byte[] keyBytes, long hash) {
+        var index = state.index();
+        var mask = index.capacity() - 1;
+        var slot = (int) hash & mask;
+        for (int i = 0; i < index.capacity(); i++, slot = (slot + 1) & mask) {
+            var slotHash = index.hash(slot);
+            if (slotHash == EMPTY) {
+                return -1;
+            }
+            if (slotHash == hash) {
+                var location = index.location(slot);
+                if (location != DELETED && key(state.segment().record(location)).equals(ByteBuffer.wrap(keyBytes))) {
+                    return slot;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static ByteBuffer key(ByteBuffer record) {
+        return record.slice(RECORD_HEADER_SIZE, record.getShort(17) & 0xffff);
+    }
+
+    private static ByteBuffer value(ByteBuffer record) {
+        var offset = RECORD_HEADER_SIZE + (record.getShort(17) & 0xffff);
+        return record.slice(offset, record.limit() - offset);
+    }
+
+    private static long expiresAt(long ttlMillis) {
+        return ttlMillis > 0 ? System.currentTimeMillis() + ttlMillis : 0;
+    }
+
+    private static boolean isExpired(long expiresAt, long now) {
+        return expiresAt > 0 && now >= expiresAt;
+    }
+
+    /**
+     * Keys already end in a keccak digest, so this mostly spreads the prefix evenly. Never EMPTY.
+     */
+    private static long hash(byte[] keyBytes) {
+        var hash = Utils.hash64(keyBytes);
+        return hash == EMPTY ? 1 : hash;
+    }
+
+    /**
+     * @return the index size that keeps live keys at a quarter of the slots, or at most half of them at the largest size
+     * @throws IllegalStateException if live keys do not fit even in the largest index
+     */
+    private static int indexSlotsFor(long live) {
+        if (live * 2 > MAX_INDEX_SLOTS) {
+            throw new IllegalStateException("DiskCacheBackend index is full: " + live + " keys, the most it holds is " + MAX_INDEX_SLOTS / 2);
+        }
+        var slots = MIN_INDEX_SLOTS;
+        while (slots < live * 4 && slots < MAX_INDEX_SLOTS) {
+            slots <<= 1;
+        }
+        return slots;
+    }
+
+    private static String segmentFileName(long generation) {
+        return "segment-" + generation + ".log";
+    }
+
+    /**
+     * The append-only record file, mapped in fixed-size chunks as it grows. Records never cross a chunk boundary.
+     */
+    private static final class Segment {
+        private final Path path;
+        private final long generation;
+        private final int chunkSize;
+        private final FileChannel channel;
+        // replaced, never modified in place, when a chunk is mapped
+        private volatile MappedByteBuffer[] chunks;
+        private long end;
+
+        private Segment(Path path, long generation, int chunkSize, FileChannel channel, MappedByteBuffer[] chunks, long end) {
+            this.path = path;
+            this.generation = generation;
+            this.chunkSize = chunkSize;
+            this.channel = channel;
+            this.chunks = chunks;
+            this.end = end;
+        }
+
+        static Segment create(Path path, long generation, int chunkSize) throws IOException {
+            var channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            var first = channel.map(FileChannel.MapMode.READ_WRITE, 0, chunkSize);
+            first.putInt(0, SEGMENT_MAGIC).putInt(4, VERSION).putInt(8, chunkSize);
+            return new Segment(path, generation, chunkSize, channel, new MappedByteBuffer[] {first}, SEGMENT_HEADER_SIZE);
+        }
+
+        /**
+         * @param end where the records end, or -1 to find out by scanning them
+         */
+        static Segment open(Path path, long generation, int chunkSize, long end) throws IOException {
+            var channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            var count = (int) Math.max(1, (channel.size() + chunkSize - 1) / chunkSize);
+            var chunks = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE, (long) i * chunkSize, chunkSize);
+            }
+            if (chunks[0].getInt(0) != SEGMENT_MAGIC || chunks[0].getInt(4) != VERSION || chunks[0].getInt(8) != chunkSize) {
+                channel.close();
+                throw new IOException(path + " is not a cache segment of version " + VERSION + " with chunk size " + chunkSize);
+            }
+
+            var segment = new Segment(path, generation, chunkSize, channel, chunks, SEGMENT_HEADER_SIZE);
+            if (end >= 0) {
+                segment.end = end;
+            }
+            else {
+                // stop at the first missing or torn record
+                var location = segment.first();
+                while (location < (long) count * chunkSize && segment.isValid(location)) {
+                    location = segment.next(location);
+                }
+                segment.end = location;
+            }
+            return segment;
+        }
+
+        Segment renamed(Path path) {
+            return new Segment(path, generation, chunkSize, channel, chunks, end);
+        }
+
+        Path path() {
+            return path;
+        }
+
+        long generation() {
+            return generation;
+        }
+
+        long end() {
+            return end;
+        }
+
+        long first() {
+            return align(SEGMENT_HEADER_SIZE);
+        }
+
+        long next(long location) {
+            return align(location + recordSize(location));
+        }
+
+        /**
+         * Skip to the next chunk if location is at padding or too near the end of its chunk for a record
+         */
+        private long align(long location) {
+            var chunk = (int) (location / chunkSize);
+            var position = (int) (location % chunkSize);
+            if (position + 4 > chunkSize || (chunk < chunks.length && chunks[chunk].getInt(position) == SKIP)) {
+                return (long) (chunk + 1) * chunkSize;
+            }
+            return location;
+        }
+
+        private boolean isValid(long location) {
+            var chunk = chunks[(int) (location / chunkSize)];
+            var position = (int) (location % chunkSize);
+            var length = chunk.getInt(position);
+            if (length < RECORD_HEADER_SIZE - 4 || position + 4 + length > chunkSize) {
+                return false;
+            }
+            var crc = new CRC32C();
+            crc.update(chunk.slice(position + 8, length - 4));
+            return (int) crc.getValue() == chunk.getInt(position + 4);
+        }
+
+        int recordSize(long location) {
+            return 4 + chunks[(int) (location / chunkSize)].getInt((int) (location % chunkSize));
+        }
+
+        /**
+         * @return the whole record at location, from its length field on
+         */
+        ByteBuffer record(long location) {
+            var chunk = chunks[(int) (location / chunkSize)];
+            var position = (int) (location % chunkSize);
+            return chunk.slice(position, 4 + chunk.getInt(position));
+        }
+
+        /**
+         * @return the location of the new record
+         */
+        long append(byte type, long expiresAt, byte[] keyBytes, byte[] value) {
+            if (keyBytes.length > 0xffff) {
+                throw new IllegalArgumentException("key too long: " + keyBytes.length + " bytes");
+            }
+            var size = RECORD_HEADER_SIZE + keyBytes.length + value.length;
+            var chunk = reserve(size);
+            var position = (int) (end % chunkSize);
+            chunk.put(position + 8, type)
+                    .putLong(position + 9, expiresAt)
+                    .putShort(position + 17, (short) keyBytes.length)
+                    .put(position + RECORD_HEADER_SIZE, keyBytes)
+                    .put(position + RECORD_HEADER_SIZE + keyBytes.length, value);
+            return commit(chunk, position, size);
+        }
+
+        /**
+         * Append a record read from another segment as is
+         */
+        long copy(ByteBuffer record) {
+            var size = record.remaining();
+            var chunk = reserve(size);
+            var position = (int) (end % chunkSize);
+            chunk.put(position + 8, record, 8, size - 8);
+            return commit(chunk, position, size);
+        }
+
+        private MappedByteBuffer reserve(int size) {
+            if (size > chunkSize - SEGMENT_HEADER_SIZE) {
+                throw new IllegalArgumentException("entry of " + size + " bytes does not fit in a chunk of " + chunkSize);
+            }
+            var position = (int) (end % chunkSize);
+            if (position + size > chunkSize) {
+                if (position + 4 <= chunkSize) {
+                    chunks[(int) (end / chunkSize)].putInt(position, SKIP);
+                }
+                end += chunkSize - position;
+            }
+
+            var index = (int) (end / chunkSize);
+            if (index >= chunks.length) {
+                try {
+                    var grown = Arrays.copyOf(chunks, index + 1);
+                    grown[index] = channel.map(FileChannel.MapMode.READ_WRITE, (long) index * chunkSize, chunkSize);
+                    chunks = grown;
+                } catch (IOException e) {
+                    throw new UncheckedIOException("could not grow " + path, e);
+                }
+            }
+            return chunks[index];
+        }
+
+        private long commit(MappedByteBuffer chunk, int position, int size) {
+            var crc = new CRC32C();
+            crc.update(chunk.slice(position + 8, size - 8));
+            // the length goes last, a record is only found through the index once complete
+            chunk.putInt(position + 4, (int) crc.getValue()).putInt(position, size - 4);
+            var location = end;
+            end += size;
+            return location;
+        }
+
+        void force() {
+            for (var chunk : chunks) {
+                chunk.force();
+            }
+        }
+
+        void closeChannel() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * Open-addressing hash table of 16-byte slots (key hash, record location) after a 64-byte header: magic, version,
+     * slot count, clean flag, segment generation, segment end and garbage bytes. The slots are mapped in regions of
+     * 2^REGION_SLOT_BITS, as a single mapping is limited to 2GiB.
+     */
+    private static final class Index {
+        private static final int REGION_MASK = (1 << REGION_SLOT_BITS) - 1;
+
+        private final Path path;
+        private final FileChannel channel;
+        private final MappedByteBuffer header;
+        private final MappedByteBuffer[] regions;
+        private final int capacity;
+        // written holding the write lock only
+        private int used;
+        private long live;
+
+        private Index(Path path, FileChannel channel, MappedByteBuffer header, MappedByteBuffer[] regions, int capacity, int used, long live) {
+            this.path = path;
+            this.channel = channel;
+            this.header = header;
+            this.regions = regions;
+            this.capacity = capacity;
+            this.used = used;
+            this.live = live;
+        }
+
+        static Index create(Path path, int capacity, long generation) throws IOException {
+            var channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            var header = channel.map(FileChannel.MapMode.READ_WRITE, 0, INDEX_HEADER_SIZE);
+            header.putInt(0, INDEX_MAGIC).putInt(4, VERSION).putInt(8, capacity).putLong(16, generation);
+            return new Index(path, channel, header, mapRegions(channel, capacity), capacity, 0, 0);
+        }
+
+        /**
+         * @return the index, or null if the file is not a valid index
+         */
+        static Index open(Path path) throws IOException {
+            var channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (channel.size() < INDEX_HEADER_SIZE) {
+                channel.close();
+                return null;
+            }
+            var header = channel.map(FileChannel.MapMode.READ_WRITE, 0, INDEX_HEADER_SIZE);
+            var capacity = header.getInt(8);
+            if (header.getInt(0) != INDEX_MAGIC || header.getInt(4) != VERSION || Integer.bitCount(capacity) != 1
+                    || capacity > MAX_INDEX_SLOTS || channel.size() != INDEX_HEADER_SIZE + (long) capacity * SLOT_SIZE) {
+                channel.close();
+                return null;
+            }
+
+            var index = new Index(path, channel, header, mapRegions(channel, capacity), capacity, 0, 0);
+            for (int slot = 0; slot < capacity; slot++) {
+                if (index.hash(slot) != EMPTY) {
+                    index.used++;
+                    if (index.location(slot) != DELETED) {
+                        index.live++;
+                    }
+                }
+            }
+            return index;
+        }
+
+        private static MappedByteBuffer[] mapRegions(FileChannel channel, int capacity) throws IOException {
+            var regionSlots = Math.min(capacity, 1 << REGION_SLOT_BITS);
+            var regions = new MappedByteBuffer[capacity / regionSlots];
+            for (int i = 0; i < regions.length; i++) {
+                regions[i] = channel.map(FileChannel.MapMode.READ_WRITE, INDEX_HEADER_SIZE + (long) i * regionSlots * SLOT_SIZE, (long) regionSlots * SLOT_SIZE);
+            }
+            return regions;
+        }
+
+        Index renamed(Path path) {
+            return new Index(path, channel, header, regions, capacity, used, live);
+        }
+
+        Path path() {
+            return path;
+        }
+
+        int capacity() {
+            return capacity;
+        }
+
+        long live() {
+            return live;
+        }
+
+        boolean isClean() {
+            return header.getInt(12) == 1;
+        }
+
+        long generation() {
+            return header.getLong(16);
+        }
+
+        long segmentEnd() {
+            return header.getLong(24);
+        }
+
+        long garbageBytes() {
+            return header.getLong(32);
+        }
+
+        void writeHeader(long segmentEnd, long garbageBytes, boolean clean) {
+            header.putLong(24, segmentEnd).putLong(32, garbageBytes).putInt(12, clean ? 1 : 0);
+        }
+
+        void force() {
+            for (var region : regions) {
+                region.force();
+            }
+            header.force();
+        }
+
+        boolean isFull() {
+            return used * 2L > capacity;
+        }
+
+        private MappedByteBuffer region(int slot) {
+            return regions[slot >>> REGION_SLOT_BITS];
+        }
+
+        private static int offset(int slot) {
+            return (slot & REGION_MASK) * SLOT_SIZE;
+        }
+
+        long hash(int slot) {
+            return (long) LONGS.getAcquire(region(slot), offset(slot));
+        }
+
+        long location(int slot) {
+            return (long) LONGS.getAcquire(region(slot), offset(slot) + 8);
+        }
+
+        void setLocation(int slot, long location) {
+            var previous = location(slot);
+            if (previous == DELETED && location != DELETED) {
+                live++;
+            }
+            else if (previous != DELETED && location == DELETED) {
+                live--;
+            }
+            LONGS.setRelease(region(slot), offset(slot) + 8, location);
+        }
+
+        /**
+         * Add a key known not to be in the index, reusing a deleted slot of the same hash on the way if there is one
+         * @throws IllegalStateException if there is no free slot, which isFull checks before it comes to that
+         */
+        void insert(long hash, long location) {
+            var mask = capacity - 1;
+            var slot = (int) hash & mask;
+            for (int i = 0; i < capacity; i++, slot = (slot + 1) & mask) {
+                var slotHash = hash(slot);
+                if (slotHash == EMPTY) {
+                    // the location first, so a reader that sees the hash also sees where the record is
+                    LONGS.setRelease(region(slot), offset(slot) + 8, location);
+                    LONGS.setRelease(region(slot), offset(slot), hash);
+                    used++;
+                    live++;
+                    return;
+                }
+                if (slotHash == hash && location(slot) == DELETED) {
+                    setLocation(slot, location);
+                    return;
+                }
+            }
+            throw new IllegalStateException("DiskCacheBackend index has no free slot in " + capacity);
+        }
+
+        void copyFrom(Index other) {
+            for (int slot = 0; slot < other.capacity; slot++) {
+                var hash = other.hash(slot);
+                var location = other.location(slot);
+                if (hash != EMPTY && location != DELETED) {
+                    insert(hash, location);
+                }
+            }
+        }
+
+        void closeChannel() throws IOException {
+            channel.close();
+        }
+    }
+}
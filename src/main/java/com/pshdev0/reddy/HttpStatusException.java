@@ -0,0 +1,29 @@
+package com.pshdev0.reddy;
+
+import java.io.IOException;
+
+/**
+ * Thrown by Network.get and Network.post when the server answers with a non-2xx status
+ */
+public class HttpStatusException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+
+    public HttpStatusException(String url, int statusCode, String body) {
+        super("HTTP " + statusCode + " from " + url + (body == null || body.isBlank() ? "" : ": " + body));
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @return true for statuses worth retrying: timeouts, rate limiting and server errors
+     */
+    public boolean isRetryable() {
+        return statusCode == 408 || statusCode == 429 || statusCode >= 500;
+    }
+}
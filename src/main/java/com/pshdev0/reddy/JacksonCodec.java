@@ -0,0 +1,103 @@
+package com.pshdev0.reddy;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.BeanPropertyWriter;
+import com.fasterxml.jackson.databind.ser.BeanSerializerModifier;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Codec for any Jackson ObjectMapper, optionally deflate-compressed. Binary formats such as Smile or CBOR only need
+ * their Jackson dataformat module on the classpath, e.g. new JacksonCodec((byte) 3, new ObjectMapper(new SmileFactory()), false)
+ */
+public class JacksonCodec implements CacheCodec {
+
+    /**
+     * Plain JSON, exactly as values have always been stored
+     */
+    public static final JacksonCodec JSON = new JacksonCodec((byte) 0, Network.getObjectMapper(), false);
+
+    /**
+     * JSON without nulls or the duplicate *Raw properties of web3j response objects, deflate-compressed
+     */
+    public static final JacksonCodec COMPACT_JSON_DEFLATE = new JacksonCodec((byte) 1, createCompactObjectMapper(), true);
+
+    private final byte formatId;
+    private final ObjectMapper mapper;
+    private final boolean compress;
+
+    public JacksonCodec(byte formatId, ObjectMapper mapper, boolean compress) {
+        if (formatId == 0 && compress) {
+            throw new IllegalArgumentException("format id 0 is reserved for uncompressed, header-less values");
+        }
+        this.formatId = formatId;
+        this.mapper = mapper;
+        this.compress = compress;
+    }
+
+    /**
+     * web3j response objects keep the raw hex string of each quantity and expose it through both getX() and getXRaw(),
+     * so Jackson writes every quantity twice. Only the decoded value is needed to read the object back, so this mapper
+     * skips any xRaw property that has an x sibling, and leaves out nulls.
+     */
+    public static ObjectMapper createCompactObjectMapper() {
+        var module = new SimpleModule();
+        module.setSerializerModifier(new BeanSerializerModifier() {
+            @Override
+            public List<BeanPropertyWriter> changeProperties(SerializationConfig config, BeanDescription beanDesc, List<BeanPropertyWriter> beanProperties) {
+                Set<String> names = beanProperties.stream().map(BeanPropertyWriter::getName).collect(Collectors.toSet());
+                return beanProperties.stream()
+                        .filter(p -> !(p.getName().endsWith("Raw") && names.contains(p.getName().substring(0, p.getName().length() - 3))))
+                        .collect(Collectors.toList());
+            }
+        });
+        return new ObjectMapper()
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+                .setSerializationInclusion(JsonInclude.Include.NON_NULL)
+                .registerModule(Network.createWeb3jModule())
+                .registerModule(module);
+    }
+
+    @Override
+    public byte getFormatId() {
+        return formatId;
+    }
+
+    @Override
+    public byte[] encode(Object value) throws IOException {
+        if (!compress) {
+            return mapper.writeValueAsBytes(value);
+        }
+        var bytes = new ByteArrayOutputStream(1024);
+        var deflater = new Deflater(Deflater.BEST_SPEED);
+        try (var out = new DeflaterOutputStream(bytes, deflater, 4096)) {
+            mapper.writeValue(out, value);
+        } finally {
+            deflater.end(); // a deflater passed in is not ended by the stream, free its native memory now
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public <T> T decode(byte[] bytes, int offset, int length, Class<T> clazz) throws IOException {
+        if (!compress) {
+            return mapper.readValue(bytes, offset, length, clazz);
+        }
+        try (var in = new InflaterInputStream(new ByteArrayInputStream(bytes, offset, length))) {
+            return mapper.readValue(in, clazz);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.pshdev0.reddy;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded on-heap LRU cache of deserialised values, used by Network as an L1 tier in front of the cache backend.
+ * Values are handed out as-is, so callers must treat anything returned from a locally cached method as read-only.
+ *
+ * Keys are spread over up to MAX_SEGMENTS independently locked segments, each an LRU of its share of maxEntries, so
+ * concurrent lookups of different keys rarely wait on each other. Eviction is therefore LRU per segment rather than
+ * across the whole cache.
+ */
+public class LocalCache {
+
+    public static final int MAX_SEGMENTS = 16;
+    // fewest entries per segment, below that a cache has fewer segments so that per-segment LRU stays close to LRU
+    private static final int MIN_SEGMENT_ENTRIES = 64;
+
+    private record Entry(Object value, long expiresAtMillis) {
+        boolean expired(long now) {
+            return expiresAtMillis > 0 && now >= expiresAtMillis;
+        }
+    }
+
+    private static final class Segment extends LinkedHashMap<String, Entry> {
+        private static final long serialVersionUID = 1L;
+
+        private final int maxEntries;
+
+        Segment(int maxEntries) {
+            // access order gives us LRU eviction via removeEldestEntry
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > maxEntries;
+        }
+    }
+
+    private final int maxEntries;
+    private final Segment[] segments;
+
+    public LocalCache(int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        this.maxEntries = maxEntries;
+        var count = Math.min(MAX_SEGMENTS, Integer.highestOneBit(Math.max(1, maxEntries / MIN_SEGMENT_ENTRIES)));
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            // the first maxEntries % count segments take one more, so the segments add up to maxEntries
+            segments[i] = new Segment(maxEntries / count + (i < maxEntries % count ? 1 : 0));
+        }
+    }
+
+    private Segment segmentOf(String key) {
+        var hash = key.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & (segments.length - 1)];
+    }
+
+    /**
+     * @return the cached value, or null if there is none or it has expired
+     */
+    public Object get(String key) {
+        var segment = segmentOf(key);
+        synchronized (segment) {
+            var entry = segment.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expired(System.currentTimeMillis())) {
+                segment.remove(key);
+                return null;
+            }
+            return entry.value();
+        }
+    }
+
+    /**
+     * @param ttlMillis time to live, 0 or less to keep the value until it is evicted
+     */
+    public void put(String key, Object value, long ttlMillis) {
+        var entry = new Entry(value, ttlMillis > 0 ? System.currentTimeMillis() + ttlMillis : 0);
+        var segment = segmentOf(key);
+        synchronized (segment) {
+            segment.put(key, entry);
+        }
+    }
+
+    public void invalidate(String key) {
+        var segment = segmentOf(key);
+        synchronized (segment) {
+            segment.remove(key);
+        }
+    }
+
+    public void clear() {
+        for (var segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    public int size() {
+        var size = 0;
+        for (var segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+}
@@ -0,0 +1,122 @@
+package com.pshdev0.reddy;
+
+import org.web3j.protocol.core.methods.response.Log;
+
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Streams the logs matching a filter over a range of blocks. The range is split into chunks of chunkSize blocks
+ * aligned to multiples of chunkSize, so a chunk is cached (see CachedWeb3.getLogChunk) once whatever range it is later
+ * asked for as part of. Up to parallelism chunks are fetched ahead of the consumer, and logs are delivered in block
+ * order.
+ */
+public class LogRangeFetcher {
+
+    private final String rpcId;
+    private final String rpcUrl;
+    private final CachedWeb3.LogFilter filter;
+    private final int chunkSize;
+    private final int parallelism;
+
+    public LogRangeFetcher(String rpcId, String rpcUrl, CachedWeb3.LogFilter filter) {
+        this(rpcId, rpcUrl, filter, CachedWeb3.DEFAULT_LOG_CHUNK_SIZE, 4);
+    }
+
+    /**
+     * @param chunkSize the blocks per cached chunk. Changing it changes the chunks, so keep it fixed per rpcId to reuse
+     *                  what is cached. Chunks the node refuses as too large are split further when fetched.
+     */
+    public LogRangeFetcher(String rpcId, String rpcUrl, CachedWeb3.LogFilter filter, int chunkSize, int parallelism) {
+        if (chunkSize < 1 || parallelism < 1) {
+            throw new IllegalArgumentException("chunkSize and parallelism must be at least 1");
+        }
+        this.rpcId = rpcId;
+        this.rpcUrl = rpcUrl;
+        this.filter = filter;
+        this.chunkSize = chunkSize;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Stream the logs of blocks fromBlock to toBlock inclusive, stopping at the head if toBlock is beyond it. Close the
+     * stream (or use try-with-resources) to stop fetching early.
+     * @throws IllegalStateException from the stream if a chunk could not be fetched, rather than silently leaving out its logs
+     */
+    public Stream<Log> stream(BigInteger fromBlock, BigInteger toBlock) {
+        var head = CachedWeb3.getHeadBlockNumber(rpcId, rpcUrl);
+        var to = head != null && toBlock.compareTo(head) > 0 ? head : toBlock;
+        if (to.compareTo(fromBlock) < 0) {
+            return Stream.empty();
+        }
+
+        var size = BigInteger.valueOf(chunkSize);
+        var firstChunk = fromBlock.divide(size).multiply(size);
+        var count = to.subtract(firstChunk).divide(size).longValueExact() + 1;
+
+        var iterator = new ChunkIterator(firstChunk, count, head);
+        var spliterator = Spliterators.spliterator(iterator, count, Spliterator.NONNULL | Spliterator.ORDERED);
+        return StreamSupport.stream(spliterator, false)
+                .onClose(iterator::close)
+                .flatMap(Arrays::stream)
+                .filter(log -> log.getBlockNumber() != null && log.getBlockNumber().compareTo(fromBlock) >= 0 && log.getBlockNumber().compareTo(to) <= 0);
+    }
+
+    private class ChunkIterator implements Iterator<Log[]>, AutoCloseable {
+        // futures in chunk order, the consumer waits on the head while the chunks after it are fetched
+        private final Deque<CompletableFuture<Log[]>> pending = new ArrayDeque<>();
+        private final BigInteger firstChunk;
+        private final long count;
+        private final BigInteger head;
+        private long submitted;
+        private long delivered;
+        private boolean closed;
+
+        ChunkIterator(BigInteger firstChunk, long count, BigInteger head) {
+            this.firstChunk = firstChunk;
+            this.count = count;
+            this.head = head;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !closed && delivered < count;
+        }
+
+        @Override
+        public Log[] next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            while (pending.size() < parallelism && submitted < count) {
+                var chunkStart = firstChunk.add(BigInteger.valueOf(submitted++).multiply(BigInteger.valueOf(chunkSize)));
+                pending.add(Network.supplyAsync(() -> CachedWeb3.getLogChunk(rpcId, rpcUrl, filter, chunkStart, chunkSize, head)));
+            }
+
+            var chunkStart = firstChunk.add(BigInteger.valueOf(delivered).multiply(BigInteger.valueOf(chunkSize)));
+            var logs = pending.poll().join();
+            if (logs == null) {
+                close();
+                throw new IllegalStateException("could not fetch logs of blocks " + chunkStart + " to " + chunkStart.add(BigInteger.valueOf(chunkSize - 1)));
+            }
+            delivered++;
+            return logs;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            pending.forEach(future -> future.cancel(false));
+            pending.clear();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.pshdev0.reddy;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Built-in CacheMetrics that keeps counters and latency histograms in memory for each source and method. This is the
+ * default, see Network.setCacheMetrics to replace it.
+ */
+public class MetricsRegistry implements CacheMetrics {
+
+    public static class MethodMetrics {
+        private final LongAdder localHits = new LongAdder();
+        private final LongAdder localMisses = new LongAdder();
+        private final LongAdder backendHits = new LongAdder();
+        private final LongAdder backendMisses = new LongAdder();
+        private final LongAdder retries = new LongAdder();
+        private final LongAdder nullsNotCached = new LongAdder();
+        private final LongAdder bytesWritten = new LongAdder();
+        private final LongAdder bytesRead = new LongAdder();
+        private final LatencyHistogram backendLatency = new LatencyHistogram();
+        private final LatencyHistogram computeLatency = new LatencyHistogram();
+        private final LatencyHistogram encodeLatency = new LatencyHistogram();
+        private final LatencyHistogram decodeLatency = new LatencyHistogram();
+
+        public long getLocalHits() { return localHits.sum(); }
+        public long getLocalMisses() { return localMisses.sum(); }
+        public long getBackendHits() { return backendHits.sum(); }
+        public long getBackendMisses() { return backendMisses.sum(); }
+        public long getRetries() { return retries.sum(); }
+        public long getNullsNotCached() { return nullsNotCached.sum(); }
+        public long getBytesWritten() { return bytesWritten.sum(); }
+        public long getBytesRead() { return bytesRead.sum(); }
+        public LatencyHistogram getBackendLatency() { return backendLatency; }
+        public LatencyHistogram getComputeLatency() { return computeLatency; }
+        public LatencyHistogram getEncodeLatency() { return encodeLatency; }
+        public LatencyHistogram getDecodeLatency() { return decodeLatency; }
+
+        public void reset() {
+            localHits.reset();
+            localMisses.reset();
+            backendHits.reset();
+            backendMisses.reset();
+            retries.reset();
+            nullsNotCached.reset();
+            bytesWritten.reset();
+            bytesRead.reset();
+            backendLatency.reset();
+            computeLatency.reset();
+            encodeLatency.reset();
+            decodeLatency.reset();
+        }
+
+        @Override
+        public String toString() {
+            return "local " + getLocalHits() + "/" + getLocalMisses() + ", backend " + getBackendHits() + "/" + getBackendMisses() + " (hits/misses)"
+                    + ", retries " + getRetries() + ", nulls not cached " + getNullsNotCached()
+                    + ", bytes read/written " + getBytesRead() + "/" + getBytesWritten()
+                    + "\n    backend: " + backendLatency
+                    + "\n    compute: " + computeLatency
+                    + "\n    encode:  " + encodeLatency
+                    + "\n    decode:  " + decodeLatency;
+        }
+    }
+
+    // by source then method, so that a lookup on the hot path builds no key
+    private final Map<String, Map<String, MethodMetrics>> metrics = new ConcurrentHashMap<>();
+
+    private MethodMetrics of(String source, String method) {
+        var methods = metrics.get(source);
+        if (methods == null) {
+            methods = metrics.computeIfAbsent(source, key -> new ConcurrentHashMap<>());
+        }
+        var m = methods.get(method);
+        return m != null ? m : methods.computeIfAbsent(method, key -> new MethodMetrics());
+    }
+
+    Map<String, Map<String, MethodMetrics>> bySource() {
+        return metrics;
+    }
+
+    /**
+     * @return the metrics for the given source and method, empty if nothing has been recorded for them yet
+     */
+    public MethodMetrics get(String source, String method) {
+        return of(source, method);
+    }
+
+    /**
+     * @return the metrics recorded so far, keyed by source:method
+     */
+    public Map<String, MethodMetrics> getAll() {
+        var all = new TreeMap<String, MethodMetrics>();
+        metrics.forEach((source, methods) -> methods.forEach((method, m) -> all.put(source + ":" + method, m)));
+        return all;
+    }
+
+    public void reset() {
+        metrics.values().forEach(methods -> methods.values().forEach(MethodMetrics::reset));
+    }
+
+    @Override
+    public void recordLookup(String source, String method, Tier tier, boolean hit) {
+        var m = of(source, method);
+        if (tier == Tier.LOCAL) {
+            (hit ? m.localHits : m.localMisses).increment();
+        }
+        else {
+            (hit ? m.backendHits : m.backendMisses).increment();
+        }
+    }
+
+    @Override
+    public void recordBackendLatency(String source, String method, long nanos) {
+        of(source, method).backendLatency.record(nanos);
+    }
+
+    @Override
+    public void recordComputeLatency(String source, String method, long nanos) {
+        of(source, method).computeLatency.record(nanos);
+    }
+
+    @Override
+    public void recordRetry(String source, String method) {
+        of(source, method).retries.increment();
+    }
+
+    @Override
+    public void recordEncode(String source, String method, long nanos, int payloadBytes) {
+        var m = of(source, method);
+        m.encodeLatency.record(nanos);
+        m.bytesWritten.add(payloadBytes);
+    }
+
+    @Override
+    public void recordDecode(String source, String method, long nanos, int payloadBytes) {
+        var m = of(source, method);
+        m.decodeLatency.record(nanos);
+        m.bytesRead.add(payloadBytes);
+    }
+
+    @Override
+    public void recordNullNotCached(String source, String method) {
+        of(source, method).nullsNotCached.increment();
+    }
+
+    @Override
+    public String toString() {
+        var sb = new StringBuilder();
+        getAll().forEach((key, value) -> sb.append(key).append(": ").append(value).append('\n'));
+        return sb.toString();
+    }
+}
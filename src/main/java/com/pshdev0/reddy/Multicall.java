@@ -0,0 +1,98 @@
+package com.pshdev0.reddy;
+
+import org.web3j.crypto.Hash;
+import org.web3j.utils.Numeric;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * ABI encoding for Multicall3's aggregate3((address target, bool allowFailure, bytes callData)[]), which runs many
+ * contract calls in a single eth_call. The tuple arrays are encoded by hand as web3j's struct support needs a generated
+ * class per tuple type.
+ */
+public class Multicall {
+
+    /**
+     * Multicall3 is deployed at this address on most EVM chains
+     */
+    public static final String DEFAULT_ADDRESS = "0xcA11bde05977b3631167028862bE2a173976CA11";
+
+    private static final String AGGREGATE3_SELECTOR = Hash.sha3String("aggregate3((address,bool,bytes)[])").substring(0, 10);
+    private static final int WORD = 32;
+
+    public record Call(String target, String callData) { }
+
+    public record Result(boolean success, String returnData) { }
+
+    private Multicall() { }
+
+    /**
+     * @return the hex calldata for aggregate3 with allowFailure set on every call
+     */
+    public static String encodeAggregate3(List<Call> calls) {
+        var out = new ByteArrayOutputStream();
+        writeWord(out, BigInteger.valueOf(WORD));             // offset of the array
+        writeWord(out, BigInteger.valueOf(calls.size()));     // array length
+
+        // each tuple is dynamic (it holds bytes), so the array starts with the offset of each tuple
+        var tuples = new ArrayList<byte[]>(calls.size());
+        for (var call : calls) {
+            var callData = Numeric.hexStringToByteArray(call.callData());
+            var tuple = new ByteArrayOutputStream();
+            writeWord(tuple, Numeric.toBigInt(call.target()));
+            writeWord(tuple, BigInteger.ONE);                 // allowFailure
+            writeWord(tuple, BigInteger.valueOf(3 * WORD));   // offset of callData within the tuple
+            writeBytes(tuple, callData);
+            tuples.add(tuple.toByteArray());
+        }
+
+        long offset = (long) WORD * calls.size();
+        for (var tuple : tuples) {
+            writeWord(out, BigInteger.valueOf(offset));
+            offset += tuple.length;
+        }
+        tuples.forEach(out::writeBytes);
+
+        return AGGREGATE3_SELECTOR + Numeric.toHexStringNoPrefix(out.toByteArray());
+    }
+
+    /**
+     * Decode the (bool success, bytes returnData)[] returned by aggregate3
+     */
+    public static List<Result> decodeAggregate3(String hex) {
+        var data = Numeric.hexStringToByteArray(hex);
+        var arrayStart = readInt(data, 0);
+        var length = readInt(data, arrayStart);
+        var contentStart = arrayStart + WORD;
+
+        var results = new ArrayList<Result>(length);
+        for (int i = 0; i < length; i++) {
+            var tupleStart = contentStart + readInt(data, contentStart + i * WORD);
+            var success = readInt(data, tupleStart) != 0;
+            var bytesStart = tupleStart + readInt(data, tupleStart + WORD);
+            var bytesLength = readInt(data, bytesStart);
+            var returnData = Arrays.copyOfRange(data, bytesStart + WORD, bytesStart + WORD + bytesLength);
+            results.add(new Result(success, Numeric.toHexString(returnData)));
+        }
+        return results;
+    }
+
+    private static void writeWord(ByteArrayOutputStream out, BigInteger value) {
+        out.writeBytes(Numeric.toBytesPadded(value, WORD));
+    }
+
+    private static void writeBytes(ByteArrayOutputStream out, byte[] bytes) {
+        writeWord(out, BigInteger.valueOf(bytes.length));
+        out.writeBytes(bytes);
+        var padding = (WORD - bytes.length % WORD) % WORD;
+        out.writeBytes(new byte[padding]);
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return new BigInteger(1, Arrays.copyOfRange(data, offset, offset + WORD)).intValueExact();
+    }
+}
@@ -1,30 +1,71 @@
 package com.pshdev0.reddy;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonSerializer;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import org.bouncycastle.jcajce.provider.digest.Keccak;
-import org.bouncycastle.jce.provider.BouncyCastleProvider;
-import redis.clients.jedis.Jedis;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.web3j.protocol.core.methods.response.EthBlock;
+import redis.clients.jedis.HostAndPort;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.Security;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
 
 public class Network {
-    private static Jedis jedis;
+    private static final Logger logger = LoggerFactory.getLogger(Network.class);
+    private static volatile CacheBackend cacheBackend;
     private static String redisKeyPrefix;
+    private static volatile KeyHashTag keyHashTag = KeyHashTag.NONE;
     private static final ObjectMapper objectMapper;
-    private static long defaultMillis = 26;
+    private static long defaultMillis = 0;
+    private static long defaultTtlMillis = 0;
+    private static volatile RetryPolicy retryPolicy = RetryPolicy.DEFAULT;
+    private static final Map<String, RateLimiter> rateLimiters = new ConcurrentHashMap<>();
+    private static final Map<Byte, CacheCodec> cacheCodecs = new ConcurrentHashMap<>();
+    private static volatile CacheCodec cacheCodec; // null until set, meaning JacksonCodec.JSON
+    private static volatile HttpClient httpClient;
+    private static volatile long httpConnectTimeoutMillis = 10_000;
+    private static volatile long httpRequestTimeoutMillis = 30_000;
     private static boolean debugInfo;
+    private static final Map<String, LocalCache> localCaches = new ConcurrentHashMap<>();
+    private static final Map<String, Long> negativeCacheTtls = new ConcurrentHashMap<>();
+    // what a negatively cached null is stored as, in the backend and in local caches
+    private static final byte[] NULL_VALUE = {CacheCodec.FORMAT_MARKER, CacheCodec.NULL_FORMAT_ID};
+    private static final Object LOCAL_NULL_VALUE = new Object();
+    // appended to a key for the lock taken while computing its value
+    static final String LOCK_KEY_SUFFIX = ":lock";
+    private static volatile CacheMetrics cacheMetrics = new MetricsRegistry();
+    private static final Map<String, CompletableFuture<Object>> inFlightComputations = new ConcurrentHashMap<>();
+    private static long distributedLockMillis = 0;
+    private static volatile Executor asyncExecutor = Executors.newVirtualThreadPerTaskExecutor();
 
     static {
         /*
@@ -34,7 +75,24 @@ public class Network {
          * to deserialise the json string back into EthBlock.Block you'll get an unknown property exception because
          * the fieldRaw fields don't exist!
         */
-        objectMapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        objectMapper = new ObjectMapper()
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+                .registerModule(createWeb3jModule());
+    }
+
+    /**
+     * Serialisers for web3j types Jackson cannot write as beans. A block's transaction hashes are written as plain
+     * strings, as in eth_getBlockByNumber responses, which EthBlock.Block reads back as TransactionHash.
+     */
+    static SimpleModule createWeb3jModule() {
+        var module = new SimpleModule();
+        module.addSerializer(EthBlock.TransactionHash.class, new JsonSerializer<>() {
+            @Override
+            public void serialize(EthBlock.TransactionHash value, JsonGenerator generator, SerializerProvider provider) throws IOException {
+                generator.writeString(value.get());
+            }
+        });
+        return module;
     }
 
     private Network() { }
@@ -43,41 +101,212 @@ public class Network {
         redisKeyPrefix = prefix;
     }
 
-    public static Jedis getRedis() {
-        if(jedis == null) {
-            jedis = new Jedis("localhost", 6379);
+    public static String getRedisKeyPrefix() {
+        return redisKeyPrefix;
+    }
+
+    /**
+     * Which part of the keys createRedisKey makes is wrapped in a hash tag. Redis Cluster and ShardedCacheBackend place
+     * a key by its hash tag alone, so all the keys with the same tag end up on the same node.
+     */
+    public enum KeyHashTag {
+        /** prefix:source:method:version:hash, each key placed on its own */
+        NONE,
+        /** prefix:{source}:method:version:hash, all of a source (e.g. an rpcId) together */
+        SOURCE,
+        /** prefix:{source:method}:version:hash, all of a source's entries of one method together */
+        SOURCE_METHOD
+    }
+
+    /**
+     * Changing this changes every key, so entries cached under the previous layout are no longer found
+     */
+    public static void setKeyHashTag(KeyHashTag hashTag) {
+        keyHashTag = hashTag;
+    }
+
+    public static KeyHashTag getKeyHashTag() {
+        return keyHashTag;
+    }
+
+    /**
+     * @return the cache backend, creating a pooled Redis backend on localhost:6379 if none has been set
+     */
+    public static CacheBackend getCacheBackend() {
+        var backend = cacheBackend;
+        if(backend == null) {
+            synchronized (Network.class) {
+                backend = cacheBackend;
+                if(backend == null) {
+                    backend = new RedisCacheBackend("localhost", 6379);
+                    cacheBackend = backend;
+                }
+            }
         }
-        return jedis;
+        return backend;
     }
 
-    public static String createRedisKey(String source, String method, int version, String ... stringsToJoinAndHash) {
-        var id = Arrays.stream(stringsToJoinAndHash).map(x -> x.replaceAll("\\s+", "")).collect(Collectors.joining()).toLowerCase();
-        return redisKeyPrefix + ":" + source + ":" + method + ":" + version + ":" + getKeccak256Hash(id);
+    /**
+     * Replace the cache backend, closing the previous one (if any)
+     */
+    public static void setCacheBackend(CacheBackend backend) {
+        CacheBackend previous;
+        synchronized (Network.class) {
+            previous = cacheBackend;
+            cacheBackend = backend;
+        }
+        if(previous != null && previous != backend) {
+            previous.close();
+        }
     }
 
-    public static String getKeccak256Hash(String signature) {
-        Security.addProvider(new BouncyCastleProvider());
-        MessageDigest digest = new Keccak.Digest256();
-        byte[] encodedhash = digest.digest(signature.getBytes(StandardCharsets.UTF_8));
-        return bytesToHex(encodedhash);
+    public static void useRedis(String host, int port, int poolSize, int connectionTimeoutMillis, int socketTimeoutMillis) {
+        setCacheBackend(new RedisCacheBackend(host, port, poolSize, connectionTimeoutMillis, socketTimeoutMillis));
     }
 
-    private static String bytesToHex(byte[] hash) {
-        StringBuilder hexString = new StringBuilder(2 * hash.length);
-        for (byte b : hash) {
-            String hex = Integer.toHexString(0xff & b);
-            if (hex.length() == 1) {
-                hexString.append('0');
+    /**
+     * Cache in a Redis Cluster, discovered from any of clusterNodes
+     */
+    public static void useRedisCluster(Set<HostAndPort> clusterNodes, int poolSize, int connectionTimeoutMillis, int socketTimeoutMillis) {
+        setCacheBackend(new RedisCacheBackend(clusterNodes, poolSize, connectionTimeoutMillis, socketTimeoutMillis));
+    }
+
+    /**
+     * Cache across standalone Redis nodes, sharded client-side by consistent hashing (see ShardedCacheBackend)
+     */
+    public static void useShardedRedis(List<HostAndPort> nodes) {
+        setCacheBackend(new ShardedCacheBackend(nodes));
+    }
+
+    /**
+     * Cache in an embedded DiskCacheBackend in directory instead of Redis, e.g. for single-node jobs and CI
+     */
+    public static void useDisk(Path directory) throws IOException {
+        setCacheBackend(new DiskCacheBackend(directory));
+    }
+
+    public static String createRedisKey(String source, String method, int version, String ... stringsToJoinAndHash) {
+        var hash = getKeccak256Hash(joinForHash(stringsToJoinAndHash));
+        return switch (keyHashTag) {
+            case NONE -> redisKeyPrefix + ":" + source + ":" + method + ":" + version + ":" + hash;
+            case SOURCE -> redisKeyPrefix + ":{" + source + "}:" + method + ":" + version + ":" + hash;
+            case SOURCE_METHOD -> redisKeyPrefix + ":{" + source + ":" + method + "}:" + version + ":" + hash;
+        };
+    }
+
+    /**
+     * Join the strings with all whitespace removed, lowercased, as hashed by createRedisKey
+     */
+    static String joinForHash(String ... strings) {
+        int length = 0;
+        for (var string : strings) {
+            length += string.length();
+        }
+
+        var joined = new StringBuilder(length);
+        for (var string : strings) {
+            for (int i = 0; i < string.length(); i++) {
+                var c = string.charAt(i);
+                // the same characters as the regex \s
+                if (c != ' ' && c != '\t' && c != '\n' && c != '\u000B' && c != '\f' && c != '\r') {
+                    joined.append(c);
+                }
             }
-            hexString.append(hex);
         }
-        return hexString.toString();
+        return joined.toString().toLowerCase();
+    }
+
+    public static String getKeccak256Hash(String signature) {
+        return Utils.getKeccak256Hash(signature);
     }
 
     public static ObjectMapper getObjectMapper() {
         return objectMapper;
     }
 
+    /**
+     * Set the codec used to write new cache values. Values already in the cache are read with whichever registered
+     * codec wrote them, so switching codec does not invalidate existing entries.
+     */
+    public static void setCacheCodec(CacheCodec codec) {
+        registerCacheCodec(codec);
+        cacheCodec = codec;
+    }
+
+    /*
+     * the built-in codecs are looked up lazily rather than referenced from a static initialiser, as they are built
+     * from objectMapper and would otherwise be created before it
+     */
+    public static CacheCodec getCacheCodec() {
+        var codec = cacheCodec;
+        return codec == null ? JacksonCodec.JSON : codec;
+    }
+
+    private static CacheCodec getCacheCodec(byte formatId) {
+        var codec = cacheCodecs.get(formatId);
+        if (codec == null && formatId == JacksonCodec.COMPACT_JSON_DEFLATE.getFormatId()) {
+            codec = JacksonCodec.COMPACT_JSON_DEFLATE;
+        }
+        return codec;
+    }
+
+    /**
+     * Make a codec available for reading values it has written, without using it for writes
+     */
+    public static void registerCacheCodec(CacheCodec codec) {
+        if (codec.getFormatId() == CacheCodec.NULL_FORMAT_ID) {
+            throw new IllegalArgumentException("format id " + CacheCodec.NULL_FORMAT_ID + " is reserved");
+        }
+        cacheCodecs.put(codec.getFormatId(), codec);
+    }
+
+    private static boolean isNullValue(byte[] bytes) {
+        return bytes.length == 2 && bytes[0] == CacheCodec.FORMAT_MARKER && bytes[1] == CacheCodec.NULL_FORMAT_ID;
+    }
+
+    static byte[] encodeValue(Object value) throws IOException {
+        var codec = getCacheCodec();
+        var payload = codec.encode(value);
+        if (codec.getFormatId() == 0) {
+            return payload;
+        }
+        var bytes = new byte[payload.length + 2];
+        bytes[0] = CacheCodec.FORMAT_MARKER;
+        bytes[1] = codec.getFormatId();
+        System.arraycopy(payload, 0, bytes, 2, payload.length);
+        return bytes;
+    }
+
+    static <T> T decodeValue(byte[] bytes, Class<T> clazz) throws IOException {
+        if (bytes.length < 2 || bytes[0] != CacheCodec.FORMAT_MARKER) {
+            // no header, plain JSON
+            return objectMapper.readValue(bytes, clazz);
+        }
+        var codec = getCacheCodec(bytes[1]);
+        if (codec == null) {
+            throw new IOException("no cache codec registered for format " + bytes[1]);
+        }
+        return codec.decode(bytes, 2, bytes.length - 2, clazz);
+    }
+
+    private static byte[] encodeValue(Object value, CacheMetrics metrics, String redisSourceName, String redisMethodName) throws IOException {
+        var start = System.nanoTime();
+        var bytes = encodeValue(value);
+        metrics.recordEncode(redisSourceName, redisMethodName, System.nanoTime() - start, bytes.length);
+        return bytes;
+    }
+
+    private static <T> T decodeValue(byte[] bytes, Class<T> clazz, CacheMetrics metrics, String redisSourceName, String redisMethodName) throws IOException {
+        var start = System.nanoTime();
+        var value = decodeValue(bytes, clazz);
+        metrics.recordDecode(redisSourceName, redisMethodName, System.nanoTime() - start, bytes.length);
+        return value;
+    }
+
+    /**
+     * @param defaultMillis delay before the first compute attempt, 0 (the default) to compute straight away. Backoff
+     *                      between retries is set by the retry policy instead
+     */
     public static void setDefaultMillis(long defaultMillis) {
         Network.defaultMillis = defaultMillis;
     }
@@ -86,10 +315,149 @@ public class Network {
         return defaultMillis;
     }
 
+    /**
+     * @param ttlMillis expiry applied to newly cached values, 0 or less to keep them forever (the default)
+     */
+    public static void setDefaultTtlMillis(long ttlMillis) {
+        Network.defaultTtlMillis = ttlMillis;
+    }
+
+    public static long getDefaultTtlMillis() {
+        return defaultTtlMillis;
+    }
+
+    /**
+     * Set the retry policy used by every call that does not pass its own
+     */
+    public static void setRetryPolicy(RetryPolicy retryPolicy) {
+        Network.retryPolicy = retryPolicy;
+    }
+
+    public static RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Limit calls to an endpoint to permitsPerSecond, allowing bursts of up to burst calls. The id is matched against
+     * the redisSourceName (the rpcId for CachedWeb3) before every compute attempt, and against the host of the url in
+     * Network.get and Network.post.
+     */
+    public static void setRateLimit(String id, double permitsPerSecond, int burst) {
+        rateLimiters.put(id, new RateLimiter(permitsPerSecond, burst));
+    }
+
+    public static void removeRateLimit(String id) {
+        rateLimiters.remove(id);
+    }
+
+    public static RateLimiter getRateLimiter(String id) {
+        return rateLimiters.get(id);
+    }
+
+    private static void acquireUrlPermit(String url) {
+        if (rateLimiters.isEmpty()) {
+            return;
+        }
+        var host = URI.create(url).getHost();
+        var rateLimiter = host == null ? null : rateLimiters.get(host);
+        if (rateLimiter != null) {
+            rateLimiter.acquire();
+        }
+    }
+
     public static void blockingWait(long milliseconds) {
         CompletableFuture.runAsync(() -> {}, CompletableFuture.delayedExecutor(milliseconds, TimeUnit.MILLISECONDS)).join();
     }
 
+    /**
+     * Keep up to maxEntries deserialised values of the given method on the heap, in front of the cache backend.
+     * Only worth enabling for immutable data, e.g. blocks, receipts and transactions, and returned values are shared
+     * so must not be modified by callers.
+     */
+    public static void enableLocalCache(String redisMethodName, int maxEntries) {
+        localCaches.put(redisMethodName, new LocalCache(maxEntries));
+    }
+
+    public static void disableLocalCache(String redisMethodName) {
+        localCaches.remove(redisMethodName);
+    }
+
+    public static LocalCache getLocalCache(String redisMethodName) {
+        return localCaches.get(redisMethodName);
+    }
+
+    /**
+     * Cache null results of the given method, e.g. unknown transaction hashes or reverted calls, for ttlMillis so that
+     * repeated lookups of missing data stop reaching the node. Off by default. Only nulls returned by the compute
+     * function are cached; a call whose every retry failed is not.
+     */
+    public static void enableNegativeCache(String redisMethodName, long ttlMillis) {
+        if (ttlMillis <= 0) {
+            throw new IllegalArgumentException("negative cache ttl must be positive, nulls are never cached forever");
+        }
+        negativeCacheTtls.put(redisMethodName, ttlMillis);
+    }
+
+    /**
+     * Stop caching nulls for the given method. Nulls already cached are ignored from now on.
+     */
+    public static void disableNegativeCache(String redisMethodName) {
+        negativeCacheTtls.remove(redisMethodName);
+    }
+
+    /**
+     * @return how long nulls of the given method are cached, 0 if they are not
+     */
+    public static long getNegativeCacheTtlMillis(String redisMethodName) {
+        return negativeCacheTtls.getOrDefault(redisMethodName, 0L);
+    }
+
+    /**
+     * @return hit/miss totals of the built-in MetricsRegistry, all 0 if it was replaced with setCacheMetrics
+     */
+    public static CacheStats getCacheStats() {
+        return new CacheStats(cacheMetrics instanceof MetricsRegistry registry ? registry : new MetricsRegistry());
+    }
+
+    /**
+     * Replace the metrics sink, e.g. with an adapter to a metrics library, or CacheMetrics.NOOP to record nothing
+     */
+    public static void setCacheMetrics(CacheMetrics metrics) {
+        Network.cacheMetrics = metrics == null ? CacheMetrics.NOOP : metrics;
+    }
+
+    /**
+     * @return the metrics sink, a MetricsRegistry unless replaced with setCacheMetrics
+     */
+    public static CacheMetrics getCacheMetrics() {
+        return cacheMetrics;
+    }
+
+    /**
+     * When positive, a cache miss takes a short backend lock (SET NX PX) before computing, so that several JVMs
+     * sharing the same backend compute each key only once. Callers that fail to get the lock wait up to this long for
+     * the holder to store the value before computing it themselves. 0 (the default) disables the lock, in which case
+     * concurrent misses are still deduplicated within this JVM.
+     */
+    public static void setDistributedLockMillis(long lockMillis) {
+        Network.distributedLockMillis = lockMillis;
+    }
+
+    public static long getDistributedLockMillis() {
+        return distributedLockMillis;
+    }
+
+    /**
+     * Replace the executor used by the async API (a virtual thread per task by default)
+     */
+    public static void setAsyncExecutor(Executor executor) {
+        Network.asyncExecutor = executor;
+    }
+
+    public static Executor getAsyncExecutor() {
+        return asyncExecutor;
+    }
+
     public static void showDebugInfo(boolean state) {
         debugInfo = state;
     }
@@ -110,100 +478,583 @@ public class Network {
                                                   String redisMethodName,
                                                   int redisVersion,
                                                   String ... stringsToMakeRedisHash) {
+        return getCachedOrComputeAndWait(func, clazz, millisToWaitBeforeCompute, defaultTtlMillis, redisSourceName, redisMethodName, redisVersion, stringsToMakeRedisHash);
+    }
+
+    /**
+     * @param ttlMillis how long the computed value should live in the cache, 0 or less to keep it forever
+     */
+    public static <T> T getCachedOrComputeAndWait(ThrowingSupplier<T> func,
+                                                  Class<T> clazz,
+                                                  long millisToWaitBeforeCompute,
+                                                  long ttlMillis,
+                                                  String redisSourceName,
+                                                  String redisMethodName,
+                                                  int redisVersion,
+                                                  String ... stringsToMakeRedisHash) {
+        return getCachedOrComputeAndWait(func, clazz, millisToWaitBeforeCompute, ttlMillis, retryPolicy, redisSourceName, redisMethodName, redisVersion, stringsToMakeRedisHash);
+    }
+
+    /**
+     * @param ttlMillis how long the computed value should live in the cache, 0 or less to keep it forever
+     * @param retryPolicy how to retry func if it fails, overriding the global policy for this call
+     */
+    public static <T> T getCachedOrComputeAndWait(ThrowingSupplier<T> func,
+                                                  Class<T> clazz,
+                                                  long millisToWaitBeforeCompute,
+                                                  long ttlMillis,
+                                                  RetryPolicy retryPolicy,
+                                                  String redisSourceName,
+                                                  String redisMethodName,
+                                                  int redisVersion,
+                                                  String ... stringsToMakeRedisHash) {
+        return getCachedOrComputeAndWait(func, clazz, millisToWaitBeforeCompute, value -> ttlMillis, retryPolicy, redisSourceName, redisMethodName, redisVersion, stringsToMakeRedisHash);
+    }
+
+    /**
+     * For values whose lifetime depends on the value itself, e.g. a transaction that is still pending
+     * @param ttlMillis how long a given value should live in the cache, 0 or less to keep it forever
+     */
+    public static <T> T getCachedOrComputeAndWait(ThrowingSupplier<T> func,
+                                                  Class<T> clazz,
+                                                  ToLongFunction<? super T> ttlMillis,
+                                                  String redisSourceName,
+                                                  String redisMethodName,
+                                                  int redisVersion,
+                                                  String ... stringsToMakeRedisHash) {
+        return getCachedOrComputeAndWait(func, clazz, defaultMillis, ttlMillis, retryPolicy, redisSourceName, redisMethodName, redisVersion, stringsToMakeRedisHash);
+    }
+
+    /**
+     * @param ttlMillis how long a given value should live in the cache, 0 or less to keep it forever. Called when a
+     *                  value is computed, and also on every hit read from the backend or a lock holder while a local
+     *                  cache is enabled, to bound the local copy, so it should be cheap in the common case.
+     */
+    public static <T> T getCachedOrComputeAndWait(ThrowingSupplier<T> func,
+                                                  Class<T> clazz,
+                                                  long millisToWaitBeforeCompute,
+                                                  ToLongFunction<? super T> ttlMillis,
+                                                  String redisSourceName,
+                                                  String redisMethodName,
+                                                  int redisVersion,
+                                                  String ... stringsToMakeRedisHash) {
+        return getCachedOrComputeAndWait(func, clazz, millisToWaitBeforeCompute, ttlMillis, retryPolicy, redisSourceName, redisMethodName, redisVersion, stringsToMakeRedisHash);
+    }
+
+    /**
+     * @param ttlMillis how long a given value should live in the cache, 0 or less to keep it forever
+     * @param retryPolicy how to retry func if it fails, overriding the global policy for this call
+     */
+    public static <T> T getCachedOrComputeAndWait(ThrowingSupplier<T> func,
+                                                  Class<T> clazz,
+                                                  long millisToWaitBeforeCompute,
+                                                  ToLongFunction<? super T> ttlMillis,
+                                                  RetryPolicy retryPolicy,
+                                                  String redisSourceName,
+                                                  String redisMethodName,
+                                                  int redisVersion,
+                                                  String ... stringsToMakeRedisHash) {
         var key = createRedisKey(redisSourceName, redisMethodName, redisVersion, stringsToMakeRedisHash);
-        var redis = getRedis();
+        var localCache = localCaches.get(redisMethodName);
+        var negativeTtlMillis = getNegativeCacheTtlMillis(redisMethodName);
+        var metrics = cacheMetrics;
 
-        if (redis.exists(key)) {
-            if (redis.get(key) == null) {
-                redis.del(key);
+        if (localCache != null) {
+            var localValue = localCache.get(key);
+            var negativeHit = localValue == LOCAL_NULL_VALUE && negativeTtlMillis > 0;
+            metrics.recordLookup(redisSourceName, redisMethodName, CacheMetrics.Tier.LOCAL, negativeHit || clazz.isInstance(localValue));
+            if (negativeHit) {
+                return null;
             }
-            else {
-                try {
-                    var redisValue = redis.get(key);
-                    var returnValue = objectMapper.readValue(redisValue, clazz); // convert the JSON redis string to class T (if possible)
-                    if (debugInfo) {
-                        System.out.println("redis key: " + key + " value: " + returnValue);
-                        System.out.println("hashes:" + Arrays.stream(stringsToMakeRedisHash).map(x -> x.replaceAll("\\s+", "")).collect(Collectors.joining()).toLowerCase());
-                    }
-                    return returnValue;
-                } catch (JsonProcessingException e) {
-                    System.out.println("Redis read failed, computing instead");
-                } catch (Exception ignored) {
-                    System.out.println("failed to read redis value, computing instead");
+            if (clazz.isInstance(localValue)) {
+                return clazz.cast(localValue);
+            }
+        }
+
+        var redis = getCacheBackend();
+
+        // a single GET serves as both the existence check and the read, null means a miss
+        var start = System.nanoTime();
+        var redisValue = redis.get(key);
+        metrics.recordBackendLatency(redisSourceName, redisMethodName, System.nanoTime() - start);
+        if (redisValue != null && negativeTtlMillis <= 0 && isNullValue(redisValue)) {
+            redisValue = null; // a null cached before negative caching was disabled for this method
+        }
+        metrics.recordLookup(redisSourceName, redisMethodName, CacheMetrics.Tier.BACKEND, redisValue != null);
+        if (redisValue != null && isNullValue(redisValue)) {
+            if (localCache != null) {
+                localCache.put(key, LOCAL_NULL_VALUE, negativeTtlMillis);
+            }
+            return null;
+        }
+        if (redisValue != null) {
+            try {
+                var returnValue = decodeValue(redisValue, clazz, metrics, redisSourceName, redisMethodName); // convert the cached bytes to class T (if possible)
+                if (localCache != null) {
+                    localCache.put(key, returnValue, ttlMillis.applyAsLong(returnValue));
+                }
+                if (debugInfo) {
+                    logger.info("redis key: {} value: {}", key, returnValue);
+                    logger.info("hashes: {}", joinForHash(stringsToMakeRedisHash));
                 }
-                redis.del(key); // something went wrong, delete the cached key/value pair
+                return returnValue;
+            } catch (Exception e) {
+                logger.warn("failed to read cached value for {}, computing instead: {}", key, e.toString());
             }
+            redis.del(key); // something went wrong, delete the cached key/value pair
         }
 
         // at this point any previous key, if any, will no longer exist
 
-        final int maxTries = 5;
-
-        for (int tries = 0; tries < maxTries; tries++) {
-            blockingWait((1 + tries * 10) * millisToWaitBeforeCompute);
+        // single-flight: only the first caller for a key computes, concurrent callers for the same key share its result
+        var flight = new CompletableFuture<Object>();
+        var inFlight = inFlightComputations.putIfAbsent(key, flight);
+        if (inFlight != null) {
+            var sharedValue = joinInFlight(inFlight);
+            return clazz.isInstance(sharedValue) ? clazz.cast(sharedValue) : null;
+        }
 
-            try {
-                var value = func.get();
-
-                if (value == null) {
-                    if (debugInfo) {
-                        System.out.println("was going to use redis key " + key + ", but returned value was null");
-                        System.out.println("hashes:" + Arrays.stream(stringsToMakeRedisHash).map(x -> x.replaceAll("\\s+", "")).collect(Collectors.joining()).toLowerCase());
-                        System.out.println("body pretty-print:");
-                        System.out.println(Arrays.toString(stringsToMakeRedisHash));
+        try {
+            // a flight for key may have stored its value and finished between the GET above and putIfAbsent
+            var storedValue = redis.get(key);
+            if (storedValue != null && isNullValue(storedValue) && negativeTtlMillis > 0) {
+                flight.complete(null);
+                return null;
+            }
+            if (storedValue != null && !isNullValue(storedValue)) {
+                try {
+                    var value = decodeValue(storedValue, clazz, metrics, redisSourceName, redisMethodName);
+                    if (localCache != null) {
+                        localCache.put(key, value, ttlMillis.applyAsLong(value));
                     }
-                    else {
-                        System.out.println("value was null, did not store in redis");
+                    flight.complete(value);
+                    return value;
+                } catch (Exception e) {
+                    logger.warn("failed to read cached value for {}, computing instead: {}", key, e.toString());
+                }
+            }
+
+            var value = computeAndStore(func, clazz, millisToWaitBeforeCompute, ttlMillis, negativeTtlMillis, retryPolicy, redisSourceName, redisMethodName, key, localCache, stringsToMakeRedisHash);
+            flight.complete(value);
+            return value;
+        } catch (Throwable e) {
+            // Errors too, so that callers waiting on this flight always wake
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightComputations.remove(key, flight);
+        }
+    }
+
+    private static Object joinInFlight(CompletableFuture<Object> inFlight) {
+        try {
+            return inFlight.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw e.getCause() instanceof RuntimeException runtimeException ? runtimeException : e;
+        }
+    }
+
+    private static <T> T computeAndStore(ThrowingSupplier<T> func,
+                                         Class<T> clazz,
+                                         long millisToWaitBeforeCompute,
+                                         ToLongFunction<? super T> ttlMillis,
+                                         long negativeTtlMillis,
+                                         RetryPolicy retryPolicy,
+                                         String redisSourceName,
+                                         String redisMethodName,
+                                         String key,
+                                         LocalCache localCache,
+                                         String ... stringsToMakeRedisHash) {
+        var redis = getCacheBackend();
+        var metrics = cacheMetrics;
+        var lockKey = key + LOCK_KEY_SUFFIX;
+        // unique to this attempt, so that only the holder can release the lock, not whoever holds it after it expired
+        var lockToken = UUID.randomUUID().toString();
+        var locked = false;
+
+        if (distributedLockMillis > 0) {
+            // another JVM sharing this backend may already be computing the value, if so wait for it to be stored
+            locked = redis.setIfAbsent(lockKey, lockToken, distributedLockMillis);
+            if (!locked) {
+                var storedValue = awaitDistributedValue(key);
+                if (storedValue != null && isNullValue(storedValue) && negativeTtlMillis > 0) {
+                    // the holder's func returned null and it was negatively cached
+                    if (localCache != null) {
+                        localCache.put(key, LOCAL_NULL_VALUE, negativeTtlMillis);
                     }
-                } else {
+                    return null;
+                }
+                if (storedValue != null && !isNullValue(storedValue)) {
                     try {
-                        var valueString = objectMapper.writeValueAsString(value); // convert object to string to store in redis as json string
-                        redis.set(key, valueString); // store the key
-                    } catch (JsonProcessingException e) {
-                        System.out.println("Could not set Redis key/value, but returning non-null value anyway");
-                        e.printStackTrace();
-                        redis.del(key); // just to be safe, delete the key (although it should never be created)
+                        var value = decodeValue(storedValue, clazz, metrics, redisSourceName, redisMethodName);
+                        if (localCache != null) {
+                            localCache.put(key, value, ttlMillis.applyAsLong(value));
+                        }
+                        return value;
+                    } catch (Exception e) {
+                        logger.warn("failed to read value stored by the lock holder for {}, computing instead: {}", key, e.toString());
                     }
                 }
+            }
+        }
 
-                return value;
-            } catch (IOException e) {
-                if(tries < maxTries - 1) {
-                    System.out.println("IOException (possible timeout), retrying in a moment");
+        try {
+            // a null from func itself may be cached, a null because every attempt failed may not
+            var returnedNull = new AtomicBoolean();
+            var value = computeAndWait(() -> {
+                var result = func.get();
+                returnedNull.set(result == null);
+                return result;
+            }, millisToWaitBeforeCompute, retryPolicy, redisSourceName, redisMethodName);
+
+            if (value == null && negativeTtlMillis > 0 && returnedNull.get()) {
+                if (localCache != null) {
+                    localCache.put(key, LOCAL_NULL_VALUE, negativeTtlMillis);
+                }
+                var start = System.nanoTime();
+                redis.set(key, NULL_VALUE, negativeTtlMillis);
+                metrics.recordBackendLatency(redisSourceName, redisMethodName, System.nanoTime() - start);
+            } else if (value == null) {
+                metrics.recordNullNotCached(redisSourceName, redisMethodName);
+                if (debugInfo) {
+                    logger.info("was going to use redis key {}, but returned value was null", key);
+                    logger.info("hashes: {}", joinForHash(stringsToMakeRedisHash));
+                    logger.info("body: {}", Arrays.toString(stringsToMakeRedisHash));
                 }
                 else {
-                    System.out.println("All max tries attempted, failing");
+                    logger.debug("value was null, did not store {}", key);
+                }
+            } else {
+                var valueTtlMillis = ttlMillis.applyAsLong(value);
+                if (localCache != null) {
+                    localCache.put(key, value, valueTtlMillis);
+                }
+                try {
+                    var bytes = encodeValue(value, metrics, redisSourceName, redisMethodName);
+                    var start = System.nanoTime();
+                    redis.set(key, bytes, valueTtlMillis); // store the key (and its expiry) in one SET
+                    metrics.recordBackendLatency(redisSourceName, redisMethodName, System.nanoTime() - start);
+                } catch (IOException e) {
+                    logger.warn("could not serialise value for " + key + ", returning it uncached", e);
                 }
-            } catch (Exception e) {
-                // fatal error
-                throw new RuntimeException(e);
             }
 
-            System.out.println("retrying " + (tries + 1) + " of " + maxTries);
+            return value;
+        } finally {
+            if (locked) {
+                redis.delIfEquals(lockKey, lockToken);
+            }
         }
+    }
+
+    /**
+     * Poll the backend until the lock holder stores the value, or the lock expires
+     * @return the stored bytes, possibly a negatively cached null, or null if nothing appeared in time
+     */
+    private static byte[] awaitDistributedValue(String key) {
+        var redis = getCacheBackend();
+        var deadline = System.currentTimeMillis() + distributedLockMillis;
+        var pollMillis = Math.max(1, distributedLockMillis / 50);
 
-        System.out.println("--- getCachedOrComputeAndWait - all retries failed, returning null to calling method ---");
+        while (System.currentTimeMillis() < deadline) {
+            blockingWait(pollMillis);
+            var redisValue = redis.get(key);
+            if (redisValue != null) {
+                return redisValue;
+            }
+        }
         return null;
     }
 
-    public static <T> T post(String url, String requestBody, Class<T> returnClass) throws IOException {
-        List<String> curlCommand = List.of(
-                "curl", "-X", "POST", url,
-                "-H", "Content-Type: application/json",
-                "-d", requestBody
-        );
+    /**
+     * Asynchronous version of getCachedOrComputeAndWait. The lookup runs on a virtual thread, so the backoff waits
+     * between retries park the virtual thread rather than tying up a platform thread, and very many lookups can be in
+     * flight at once.
+     */
+    public static <T> CompletableFuture<T> getCachedOrComputeAsync(ThrowingSupplier<T> func,
+                                                                  Class<T> clazz,
+                                                                  String redisSourceName,
+                                                                  String redisMethodName,
+                                                                  int redisVersion,
+                                                                  String ... stringsToMakeRedisHash) {
+        return supplyAsync(() -> getCachedOrComputeAndWait(func, clazz, redisSourceName, redisMethodName, redisVersion, stringsToMakeRedisHash));
+    }
 
-        ProcessBuilder processBuilder = new ProcessBuilder(curlCommand);
-        Process process = processBuilder.start();
+    public static <T> CompletableFuture<T> getCachedOrComputeAsync(ThrowingSupplier<T> func,
+                                                                  Class<T> clazz,
+                                                                  long millisToWaitBeforeCompute,
+                                                                  long ttlMillis,
+                                                                  String redisSourceName,
+                                                                  String redisMethodName,
+                                                                  int redisVersion,
+                                                                  String ... stringsToMakeRedisHash) {
+        return supplyAsync(() -> getCachedOrComputeAndWait(func, clazz, millisToWaitBeforeCompute, ttlMillis, redisSourceName, redisMethodName, redisVersion, stringsToMakeRedisHash));
+    }
+
+    /**
+     * Run a blocking call on the async executor
+     */
+    public static <T> CompletableFuture<T> supplyAsync(Supplier<T> supplier) {
+        return CompletableFuture.supplyAsync(supplier, asyncExecutor);
+    }
+
+    public static <T> List<T> getCachedOrComputeAllAndWait(ThrowingFunction<List<String>, List<T>> func,
+                                                           Class<T> clazz,
+                                                           String redisSourceName,
+                                                           String redisMethodName,
+                                                           int redisVersion,
+                                                           List<String> ids) {
+        return getCachedOrComputeAllAndWait(func, clazz, defaultMillis, defaultTtlMillis, redisSourceName, redisMethodName, redisVersion, ids);
+    }
+
+    /**
+     * Batched version of getCachedOrComputeAndWait where each id is cached under the same key that
+     * getCachedOrComputeAndWait(..., id) would use. All keys are read with one MGET, only the misses are passed to
+     * func (which must return one value per id, in the same order, null where there is no value), and the computed
+     * values are written back in a single pipeline.
+     * @return one value per id, in the same order as ids, null where no value could be found or computed
+     */
+    public static <T> List<T> getCachedOrComputeAllAndWait(ThrowingFunction<List<String>, List<T>> func,
+                                                           Class<T> clazz,
+                                                           long millisToWaitBeforeCompute,
+                                                           long ttlMillis,
+                                                           String redisSourceName,
+                                                           String redisMethodName,
+                                                           int redisVersion,
+                                                           List<String> ids) {
+        return getCachedOrComputeAllAndWait(func, clazz, millisToWaitBeforeCompute, value -> ttlMillis, redisSourceName, redisMethodName, redisVersion, ids);
+    }
 
-        try (BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-            String inputLine;
-            StringBuilder response = new StringBuilder();
-            while ((inputLine = in.readLine()) != null) {
-                response.append(inputLine);
+    /**
+     * @param ttlMillis how long a given value should live in the cache, 0 or less to keep it forever
+     */
+    public static <T> List<T> getCachedOrComputeAllAndWait(ThrowingFunction<List<String>, List<T>> func,
+                                                           Class<T> clazz,
+                                                           long millisToWaitBeforeCompute,
+                                                           ToLongFunction<? super T> ttlMillis,
+                                                           String redisSourceName,
+                                                           String redisMethodName,
+                                                           int redisVersion,
+                                                           List<String> ids) {
+        var results = new ArrayList<T>(Collections.nCopies(ids.size(), null));
+        if (ids.isEmpty()) {
+            return results;
+        }
+
+        var keys = ids.stream().map(id -> createRedisKey(redisSourceName, redisMethodName, redisVersion, id)).toList();
+        var localCache = localCaches.get(redisMethodName);
+        var negativeTtlMillis = getNegativeCacheTtlMillis(redisMethodName);
+        var metrics = cacheMetrics;
+
+        // positions that the local cache could not serve
+        var backendPositions = new ArrayList<Integer>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            var localValue = localCache == null ? null : localCache.get(keys.get(i));
+            var negativeHit = localValue == LOCAL_NULL_VALUE && negativeTtlMillis > 0;
+            if (localCache != null) {
+                metrics.recordLookup(redisSourceName, redisMethodName, CacheMetrics.Tier.LOCAL, negativeHit || clazz.isInstance(localValue));
+            }
+            if (clazz.isInstance(localValue)) {
+                results.set(i, clazz.cast(localValue));
             }
-            return objectMapper.readValue(response.toString(), returnClass);
+            else if (!negativeHit) {
+                backendPositions.add(i);
+            }
+        }
+
+        var redis = getCacheBackend();
+        var redisValues = List.<byte[]>of();
+        if (!backendPositions.isEmpty()) {
+            var start = System.nanoTime();
+            redisValues = redis.mget(backendPositions.stream().map(keys::get).toList());
+            metrics.recordBackendLatency(redisSourceName, redisMethodName, System.nanoTime() - start);
         }
+
+        // the ids that need computing, mapped to every position they occupy in the request
+        var missing = new LinkedHashMap<String, List<Integer>>();
+        for (int j = 0; j < backendPositions.size(); j++) {
+            int i = backendPositions.get(j);
+            var redisValue = redisValues.get(j);
+            if (redisValue != null && negativeTtlMillis <= 0 && isNullValue(redisValue)) {
+                redisValue = null; // a null cached before negative caching was disabled for this method
+            }
+            metrics.recordLookup(redisSourceName, redisMethodName, CacheMetrics.Tier.BACKEND, redisValue != null);
+            if (redisValue != null && isNullValue(redisValue)) {
+                if (localCache != null) {
+                    localCache.put(keys.get(i), LOCAL_NULL_VALUE, negativeTtlMillis);
+                }
+                continue;
+            }
+            if (redisValue != null) {
+                try {
+                    var value = decodeValue(redisValue, clazz, metrics, redisSourceName, redisMethodName);
+                    results.set(i, value);
+                    if (localCache != null) {
+                        localCache.put(keys.get(i), value, ttlMillis.applyAsLong(value));
+                    }
+                    continue;
+                } catch (Exception e) {
+                    logger.warn("failed to read cached value for {}, computing instead: {}", keys.get(i), e.toString());
+                }
+            }
+            missing.computeIfAbsent(ids.get(i), x -> new ArrayList<>()).add(i);
+        }
+
+        if (debugInfo) {
+            logger.info("batch {}: {} hits, {} misses", redisMethodName, ids.size() - missing.values().stream().mapToInt(List::size).sum(), missing.size());
+        }
+
+        if (missing.isEmpty()) {
+            return results;
+        }
+
+        var missingIds = List.copyOf(missing.keySet());
+        var values = computeAndWait(() -> func.apply(missingIds), millisToWaitBeforeCompute, retryPolicy, redisSourceName, redisMethodName);
+        if (values == null || values.size() != missingIds.size()) {
+            logger.warn("batch {} did not return one value per id, nothing stored", redisMethodName);
+            missingIds.forEach(id -> metrics.recordNullNotCached(redisSourceName, redisMethodName));
+            return results;
+        }
+
+        // values to write back, grouped by ttl so that each group is a single mset
+        var toStore = new LinkedHashMap<Long, Map<String, byte[]>>();
+        for (int i = 0; i < missingIds.size(); i++) {
+            var value = values.get(i);
+            var positions = missing.get(missingIds.get(i));
+            var key = keys.get(positions.get(0));
+            if (value == null) {
+                if (negativeTtlMillis > 0) {
+                    if (localCache != null) {
+                        localCache.put(key, LOCAL_NULL_VALUE, negativeTtlMillis);
+                    }
+                    toStore.computeIfAbsent(negativeTtlMillis, ttl -> new LinkedHashMap<>()).put(key, NULL_VALUE);
+                }
+                else {
+                    metrics.recordNullNotCached(redisSourceName, redisMethodName);
+                }
+                continue;
+            }
+            positions.forEach(position -> results.set(position, value));
+            var valueTtlMillis = ttlMillis.applyAsLong(value);
+            if (localCache != null) {
+                localCache.put(key, value, valueTtlMillis);
+            }
+            try {
+                toStore.computeIfAbsent(valueTtlMillis, ttl -> new LinkedHashMap<>()).put(key, encodeValue(value, metrics, redisSourceName, redisMethodName));
+            } catch (IOException e) {
+                logger.warn("could not serialise value for " + key + ", returning it uncached", e);
+            }
+        }
+
+        msetGrouped(redis, toStore, metrics, redisSourceName, redisMethodName);
+        return results;
+    }
+
+    /**
+     * Store values under the keys getCachedOrComputeAndWait(..., id) would use, without reading the cache first and
+     * overwriting whatever is there, negative cache entries included. For values known to be good, e.g. the parts of
+     * a larger response.
+     * @param values values by id, none of them null
+     * @param ttlMillis how long a given value should live in the cache, 0 or less to keep it forever
+     */
+    public static <T> void putAll(Map<String, T> values, ToLongFunction<? super T> ttlMillis, String redisSourceName, String redisMethodName, int redisVersion) {
+        if (values.isEmpty()) {
+            return;
+        }
+        var localCache = localCaches.get(redisMethodName);
+        var metrics = cacheMetrics;
+        var toStore = new LinkedHashMap<Long, Map<String, byte[]>>();
+        values.forEach((id, value) -> {
+            var key = createRedisKey(redisSourceName, redisMethodName, redisVersion, id);
+            var valueTtlMillis = ttlMillis.applyAsLong(value);
+            if (localCache != null) {
+                localCache.put(key, value, valueTtlMillis);
+            }
+            try {
+                toStore.computeIfAbsent(valueTtlMillis, ttl -> new LinkedHashMap<>()).put(key, encodeValue(value, metrics, redisSourceName, redisMethodName));
+            } catch (IOException e) {
+                logger.warn("could not serialise value for " + key + ", not storing it", e);
+            }
+        });
+        msetGrouped(getCacheBackend(), toStore, metrics, redisSourceName, redisMethodName);
+    }
+
+    /**
+     * One mset per ttl group
+     */
+    private static void msetGrouped(CacheBackend redis, Map<Long, Map<String, byte[]>> toStore, CacheMetrics metrics, String redisSourceName, String redisMethodName) {
+        for (var entry : toStore.entrySet()) {
+            var start = System.nanoTime();
+            redis.mset(entry.getValue(), entry.getKey());
+            metrics.recordBackendLatency(redisSourceName, redisMethodName, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Run func, retrying retryable failures as set out by retryPolicy
+     * @param millisToWaitBeforeCompute optional delay before the first attempt, 0 to start straight away
+     * @param redisSourceName used to look up the rate limiter taken from before every attempt, and for metrics
+     * @return the value returned by func, or null if every attempt failed or the policy's deadline passed
+     */
+    private static <T> T computeAndWait(ThrowingSupplier<T> func, long millisToWaitBeforeCompute, RetryPolicy retryPolicy, String redisSourceName, String redisMethodName) {
+        var start = System.currentTimeMillis();
+        var maxAttempts = retryPolicy.getMaxAttempts();
+        var rateLimiter = rateLimiters.get(redisSourceName);
+        var metrics = cacheMetrics;
+
+        if (millisToWaitBeforeCompute > 0) {
+            blockingWait(millisToWaitBeforeCompute);
+        }
+
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            if (rateLimiter != null) {
+                rateLimiter.acquire();
+            }
+
+            var attemptStart = System.nanoTime();
+            try {
+                return func.get();
+            } catch (Exception e) {
+                if (!retryPolicy.isRetryable(e)) {
+                    // fatal error
+                    throw new RuntimeException(e);
+                }
+                if (attempt == maxAttempts) {
+                    logger.warn("{} {}: all {} attempts failed, last error: {}", redisSourceName, redisMethodName, maxAttempts, e.toString());
+                    break;
+                }
+                logger.debug("{} {}: attempt {} failed: {}", redisSourceName, redisMethodName, attempt, e.toString());
+            } finally {
+                metrics.recordComputeLatency(redisSourceName, redisMethodName, System.nanoTime() - attemptStart);
+            }
+
+            var backoff = retryPolicy.backoffMillis(attempt);
+            var deadline = retryPolicy.getDeadlineMillis();
+            if (deadline > 0 && System.currentTimeMillis() + backoff - start > deadline) {
+                logger.warn("{} {}: retry deadline of {}ms would be exceeded, failing", redisSourceName, redisMethodName, deadline);
+                break;
+            }
+
+            metrics.recordRetry(redisSourceName, redisMethodName);
+            logger.debug("retrying {} of {} in {}ms", attempt, maxAttempts - 1, backoff);
+            blockingWait(backoff);
+        }
+
+        logger.error("{} {}: all retries failed, returning null to calling method", redisSourceName, redisMethodName);
+        return null;
+    }
+
+    public static <T> T post(String url, String requestBody, Class<T> returnClass) throws IOException {
+        acquireUrlPermit(url);
+        var request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofMillis(httpRequestTimeoutMillis))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(requestBody))
+                .build();
+        return send(request, url, returnClass);
     }
 
     public static <T> T getCachedOrPostAndWait(String sourceId, String url, String requestBody, Class<T> returnClass) {
@@ -215,19 +1066,71 @@ public class Network {
     }
 
     public static <T> T get(String url, Class<T> returnClass) throws IOException {
-        List<String> curlCommand = List.of("curl", "-X", "GET", url, "-H", "Content-Type: application/json");
+        acquireUrlPermit(url);
+        var request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofMillis(httpRequestTimeoutMillis))
+                .header("Content-Type", "application/json")
+                .GET()
+                .build();
+        return send(request, url, returnClass);
+    }
+
+    /**
+     * Send a request on the shared client and decode the response body straight from the stream into returnClass
+     * @throws HttpStatusException if the server answers with a non-2xx status
+     */
+    private static <T> T send(HttpRequest request, String url, Class<T> returnClass) throws IOException {
+        HttpResponse<InputStream> response;
+        try {
+            response = getHttpClient().send(request, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted waiting for " + url);
+        }
 
-        ProcessBuilder processBuilder = new ProcessBuilder(curlCommand);
-        Process process = processBuilder.start();
+        try (var body = response.body()) {
+            if (response.statusCode() / 100 != 2) {
+                throw new HttpStatusException(url, response.statusCode(), new String(body.readNBytes(512), StandardCharsets.UTF_8));
+            }
+            return objectMapper.readValue(body, returnClass);
+        }
+    }
 
-        try (BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-            String inputLine;
-            StringBuilder response = new StringBuilder();
-            while ((inputLine = in.readLine()) != null) {
-                response.append(inputLine);
+    /**
+     * @return the HTTP client shared by Network.get and Network.post, it keeps connections alive between calls
+     */
+    public static HttpClient getHttpClient() {
+        var client = httpClient;
+        if (client == null) {
+            synchronized (Network.class) {
+                client = httpClient;
+                if (client == null) {
+                    client = HttpClient.newBuilder()
+                            .version(HttpClient.Version.HTTP_2)
+                            .connectTimeout(Duration.ofMillis(httpConnectTimeoutMillis))
+                            .followRedirects(HttpClient.Redirect.NORMAL)
+                            .build();
+                    httpClient = client;
+                }
             }
+        }
+        return client;
+    }
 
-            return objectMapper.readValue(response.toString(), returnClass);
+    /**
+     * Set the timeouts used by Network.get and Network.post, the shared client is rebuilt on next use. The previous
+     * client is closed, which waits for its requests in flight to complete.
+     */
+    public static void setHttpTimeouts(long connectTimeoutMillis, long requestTimeoutMillis) {
+        HttpClient previous;
+        synchronized (Network.class) {
+            httpConnectTimeoutMillis = connectTimeoutMillis;
+            httpRequestTimeoutMillis = requestTimeoutMillis;
+            previous = httpClient;
+            httpClient = null;
+        }
+        if (previous != null) {
+            previous.close();
         }
     }
 
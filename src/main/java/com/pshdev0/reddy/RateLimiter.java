@@ -0,0 +1,63 @@
+package com.pshdev0.reddy;
+
+/**
+ * Token bucket shared by every thread calling the same endpoint. The bucket holds up to burst permits and refills at
+ * permitsPerSecond; when it is empty callers queue up and each waits just long enough for its own permit.
+ */
+public class RateLimiter {
+
+    private final double permitsPerSecond;
+    private final double maxPermits;
+    private double storedPermits;  // negative when callers are queued waiting for permits
+    private long lastRefillNanos;
+
+    public RateLimiter(double permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("permitsPerSecond must be positive and burst at least 1");
+        }
+        this.permitsPerSecond = permitsPerSecond;
+        this.maxPermits = burst;
+        this.storedPermits = burst;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * Take one permit, waiting until it is available
+     */
+    public void acquire() {
+        var waitNanos = reserve();
+        if (waitNanos > 0) {
+            Network.blockingWait((waitNanos + 999_999) / 1_000_000);
+        }
+    }
+
+    /**
+     * Take one permit if one is available right now
+     */
+    public synchronized boolean tryAcquire() {
+        refill(System.nanoTime());
+        if (storedPermits >= 1) {
+            storedPermits -= 1;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return how long the caller must wait before using the permit it has just been given
+     */
+    private synchronized long reserve() {
+        refill(System.nanoTime());
+        storedPermits -= 1;
+        return storedPermits >= 0 ? 0 : (long) (-storedPermits * 1_000_000_000L / permitsPerSecond);
+    }
+
+    private void refill(long now) {
+        storedPermits = Math.min(maxPermits, storedPermits + (now - lastRefillNanos) * permitsPerSecond / 1_000_000_000L);
+        lastRefillNanos = now;
+    }
+
+    public double getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+}
@@ -0,0 +1,217 @@
+package com.pshdev0.reddy;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import redis.clients.jedis.Connection;
+import redis.clients.jedis.DefaultJedisClientConfig;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.JedisPooled;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.UnifiedJedis;
+import redis.clients.jedis.params.ScanParams;
+import redis.clients.jedis.params.SetParams;
+import redis.clients.jedis.util.SafeEncoder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Redis cache backend. Every call borrows a connection from the underlying pool and returns it straight after, so a
+ * single instance can be shared by all threads.
+ *
+ * Also runs against a Redis Cluster (a JedisCluster). Keys of one batch may then hash to different slots, so batched
+ * reads and writes are pipelined as single-key commands, which the cluster pipeline groups into one round trip per
+ * node. See Network.setKeyHashTag to keep related keys in one slot.
+ */
+public class RedisCacheBackend implements CacheBackend {
+
+    public static final int DEFAULT_POOL_SIZE = 64;
+    public static final int DEFAULT_CONNECTION_TIMEOUT_MILLIS = 2000;
+    public static final int DEFAULT_SOCKET_TIMEOUT_MILLIS = 2000;
+    private static final int SCAN_BATCH_SIZE = 1000;
+    // GET and DEL as one atomic step, run on the server
+    private static final String DEL_IF_EQUALS_SCRIPT =
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end";
+
+    public static final int DEFAULT_CLUSTER_MAX_ATTEMPTS = 5;
+
+    private final UnifiedJedis redis;
+    private final boolean cluster;
+
+    public RedisCacheBackend(String host, int port) {
+        this(host, port, DEFAULT_POOL_SIZE, DEFAULT_CONNECTION_TIMEOUT_MILLIS, DEFAULT_SOCKET_TIMEOUT_MILLIS);
+    }
+
+    public RedisCacheBackend(String host, int port, int poolSize, int connectionTimeoutMillis, int socketTimeoutMillis) {
+        this(new JedisPooled(new HostAndPort(host, port),
+                DefaultJedisClientConfig.builder()
+                        .connectionTimeoutMillis(connectionTimeoutMillis)
+                        .socketTimeoutMillis(socketTimeoutMillis)
+                        .build(),
+                createPoolConfig(poolSize)));
+    }
+
+    /**
+     * Redis Cluster backend, discovering the cluster from any of clusterNodes
+     * @param poolSize connections per cluster node
+     */
+    public RedisCacheBackend(Set<HostAndPort> clusterNodes, int poolSize, int connectionTimeoutMillis, int socketTimeoutMillis) {
+        this(new JedisCluster(clusterNodes,
+                DefaultJedisClientConfig.builder()
+                        .connectionTimeoutMillis(connectionTimeoutMillis)
+                        .socketTimeoutMillis(socketTimeoutMillis)
+                        .build(),
+                DEFAULT_CLUSTER_MAX_ATTEMPTS,
+                createPoolConfig(poolSize)));
+    }
+
+    public RedisCacheBackend(UnifiedJedis redis) {
+        this.redis = redis;
+        this.cluster = redis instanceof JedisCluster;
+    }
+
+    private static GenericObjectPoolConfig<Connection> createPoolConfig(int poolSize) {
+        var poolConfig = new GenericObjectPoolConfig<Connection>();
+        poolConfig.setMaxTotal(poolSize);
+        poolConfig.setMaxIdle(poolSize);
+        poolConfig.setMinIdle(0);
+        poolConfig.setBlockWhenExhausted(true);
+        poolConfig.setJmxEnabled(false);
+        return poolConfig;
+    }
+
+    public UnifiedJedis getRedis() {
+        return redis;
+    }
+
+    @Override
+    public byte[] get(String key) {
+        return redis.get(SafeEncoder.encode(key));
+    }
+
+    @Override
+    public void set(String key, byte[] value, long ttlMillis) {
+        if (ttlMillis > 0) {
+            redis.set(SafeEncoder.encode(key), value, SetParams.setParams().px(ttlMillis));
+        }
+        else {
+            redis.set(SafeEncoder.encode(key), value);
+        }
+    }
+
+    @Override
+    public boolean setIfAbsent(String key, String value, long ttlMillis) {
+        return "OK".equals(redis.set(key, value, SetParams.setParams().nx().px(ttlMillis)));
+    }
+
+    @Override
+    public List<byte[]> mget(List<String> keys) {
+        if (keys.isEmpty()) {
+            return List.of();
+        }
+        if (!cluster) {
+            return redis.mget(keys.stream().map(SafeEncoder::encode).toArray(byte[][]::new));
+        }
+
+        // MGET only takes keys of one slot
+        var responses = new ArrayList<Response<byte[]>>(keys.size());
+        try (var pipeline = redis.pipelined()) {
+            keys.forEach(key -> responses.add(pipeline.get(SafeEncoder.encode(key))));
+            pipeline.sync();
+        }
+        return responses.stream().map(Response::get).toList();
+    }
+
+    @Override
+    public void mset(Map<String, byte[]> values, long ttlMillis) {
+        if (values.isEmpty()) {
+            return;
+        }
+        if (ttlMillis <= 0 && !cluster) {
+            redis.mset(values.entrySet().stream().flatMap(e -> Stream.of(SafeEncoder.encode(e.getKey()), e.getValue())).toArray(byte[][]::new));
+            return;
+        }
+        // MSET has no expiry option (and only takes keys of one slot), so pipeline one SET per key instead
+        var params = ttlMillis > 0 ? SetParams.setParams().px(ttlMillis) : SetParams.setParams();
+        try (var pipeline = redis.pipelined()) {
+            values.forEach((key, value) -> pipeline.set(SafeEncoder.encode(key), value, params));
+            pipeline.sync();
+        }
+    }
+
+    @Override
+    public void del(String key) {
+        redis.del(key);
+    }
+
+    @Override
+    public boolean delIfEquals(String key, String value) {
+        var deleted = redis.eval(DEL_IF_EQUALS_SCRIPT, List.of(key), List.of(value));
+        return deleted instanceof Long count && count > 0;
+    }
+
+    /**
+     * SCANs the keyspace (of every master, on a cluster) in batches of SCAN_BATCH_SIZE keys, reading each batch's
+     * values and TTLs in one pipeline
+     */
+    @Override
+    public void forEach(String keyPrefix, EntryVisitor visitor) throws Exception {
+        var match = escapeGlob(keyPrefix) + "*";
+        if (cluster) {
+            var iteration = redis.scanIteration(SCAN_BATCH_SIZE, match);
+            while (!iteration.isIterationCompleted()) {
+                visitBatch(List.copyOf(iteration.nextBatchList()), visitor);
+            }
+            return;
+        }
+
+        var params = new ScanParams().match(match).count(SCAN_BATCH_SIZE);
+        var cursor = ScanParams.SCAN_POINTER_START;
+        do {
+            var scan = redis.scan(cursor, params);
+            cursor = scan.getCursor();
+            visitBatch(scan.getResult(), visitor);
+        } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+    }
+
+    private void visitBatch(List<String> keys, EntryVisitor visitor) throws Exception {
+        var values = new ArrayList<Response<byte[]>>(keys.size());
+        var ttls = new ArrayList<Response<Long>>(keys.size());
+        try (var pipeline = redis.pipelined()) {
+            for (var key : keys) {
+                var rawKey = SafeEncoder.encode(key);
+                values.add(pipeline.get(rawKey));
+                ttls.add(pipeline.pttl(rawKey));
+            }
+            pipeline.sync();
+        }
+
+        for (int i = 0; i < keys.size(); i++) {
+            var value = values.get(i).get();
+            var ttl = ttls.get(i).get();
+            // gone (-2) since the scan, otherwise -1 means no expiry
+            if (value != null && ttl != -2) {
+                visitor.visit(keys.get(i), value, Math.max(0, ttl));
+            }
+        }
+    }
+
+    private static String escapeGlob(String pattern) {
+        var escaped = new StringBuilder(pattern.length());
+        for (var c : pattern.toCharArray()) {
+            if (c == '*' || c == '?' || c == '[' || c == ']' || c == '\\') {
+                escaped.append('\\');
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+
+    @Override
+    public void close() {
+        redis.close();
+    }
+}
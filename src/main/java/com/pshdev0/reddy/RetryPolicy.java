@@ -0,0 +1,93 @@
+package com.pshdev0.reddy;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+
+/**
+ * How Network retries a failed compute: the first attempt runs straight away, then each retry waits an exponentially
+ * growing, jittered backoff. Only exceptions accepted by the retryable predicate are retried, anything else is fatal.
+ * Policies are immutable, use the with* methods to derive a modified copy.
+ */
+public final class RetryPolicy {
+
+    public static final RetryPolicy DEFAULT = new RetryPolicy(5, 250, 10_000, 2.0, 0.5, 0,
+            e -> e instanceof HttpStatusException statusException ? statusException.isRetryable() : e instanceof IOException);
+    public static final RetryPolicy NO_RETRY = DEFAULT.withMaxAttempts(1);
+
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final double multiplier;
+    private final double jitter;
+    private final long deadlineMillis;
+    private final Predicate<Throwable> retryable;
+
+    private RetryPolicy(int maxAttempts, long initialBackoffMillis, long maxBackoffMillis, double multiplier, double jitter, long deadlineMillis, Predicate<Throwable> retryable) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be at least 1");
+        }
+        if (jitter < 0 || jitter > 1) {
+            throw new IllegalArgumentException("jitter must be between 0 and 1");
+        }
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.multiplier = multiplier;
+        this.jitter = jitter;
+        this.deadlineMillis = deadlineMillis;
+        this.retryable = retryable;
+    }
+
+    /**
+     * @param maxAttempts total number of attempts, including the first
+     */
+    public RetryPolicy withMaxAttempts(int maxAttempts) {
+        return new RetryPolicy(maxAttempts, initialBackoffMillis, maxBackoffMillis, multiplier, jitter, deadlineMillis, retryable);
+    }
+
+    public RetryPolicy withBackoff(long initialBackoffMillis, long maxBackoffMillis, double multiplier) {
+        return new RetryPolicy(maxAttempts, initialBackoffMillis, maxBackoffMillis, multiplier, jitter, deadlineMillis, retryable);
+    }
+
+    /**
+     * @param jitter fraction of each backoff that is randomised, 0 for none, 1 for "full jitter"
+     */
+    public RetryPolicy withJitter(double jitter) {
+        return new RetryPolicy(maxAttempts, initialBackoffMillis, maxBackoffMillis, multiplier, jitter, deadlineMillis, retryable);
+    }
+
+    /**
+     * @param deadlineMillis overall time budget across all attempts and backoffs, 0 or less for none
+     */
+    public RetryPolicy withDeadline(long deadlineMillis) {
+        return new RetryPolicy(maxAttempts, initialBackoffMillis, maxBackoffMillis, multiplier, jitter, deadlineMillis, retryable);
+    }
+
+    public RetryPolicy withRetryable(Predicate<Throwable> retryable) {
+        return new RetryPolicy(maxAttempts, initialBackoffMillis, maxBackoffMillis, multiplier, jitter, deadlineMillis, retryable);
+    }
+
+    /**
+     * Also retry on exceptions of the given type
+     */
+    public RetryPolicy alsoRetryOn(Class<? extends Throwable> exceptionClass) {
+        return withRetryable(retryable.or(exceptionClass::isInstance));
+    }
+
+    public int getMaxAttempts() { return maxAttempts; }
+    public long getDeadlineMillis() { return deadlineMillis; }
+
+    public boolean isRetryable(Throwable e) {
+        return retryable.test(e);
+    }
+
+    /**
+     * @param failedAttempts number of attempts made so far (1 after the first failure)
+     * @return how long to wait before the next attempt
+     */
+    public long backoffMillis(int failedAttempts) {
+        var backoff = Math.min(maxBackoffMillis, initialBackoffMillis * Math.pow(multiplier, failedAttempts - 1));
+        return (long) (backoff * (1 - jitter * ThreadLocalRandom.current().nextDouble()));
+    }
+}
@@ -0,0 +1,203 @@
+package com.pshdev0.reddy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.BatchResponse;
+import org.web3j.protocol.core.Response;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * The endpoints serving one rpcId. Each call goes to the healthy endpoint with the best mix of measured latency and
+ * error rate, and fails over to the next one on I/O errors (timeouts, refused connections, HTTP errors) or rate-limit
+ * responses. Endpoints that keep failing are ejected and re-probed in the background until they answer again.
+ */
+public class RpcEndpointPool implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(RpcEndpointPool.class);
+
+    private static final ScheduledExecutorService prober = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        var thread = new Thread(runnable, "rpc-endpoint-prober");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public static final int EJECT_AFTER_FAILURES = 3;
+    public static final long EJECT_MILLIS = 30_000;
+    public static final long PROBE_INTERVAL_MILLIS = 5_000;
+    // assumed for an endpoint until a call to it succeeds, so it gets tried but a failing one does not stay in front
+    public static final double DEFAULT_LATENCY_MILLIS = 250;
+
+    // weight of the newest sample in the moving averages
+    private static final double ALPHA = 0.2;
+
+    public static class Endpoint {
+        private final String url;
+        private final Web3j web3j;
+        private double latencyMillis = 0;   // exponentially weighted, 0 until measured
+        private double errorRate = 0;       // exponentially weighted fraction of failed calls
+        private int consecutiveFailures = 0;
+        private long ejectedUntil = 0;
+
+        Endpoint(String url, Web3j web3j) {
+            this.url = url;
+            this.web3j = web3j;
+        }
+
+        public String getUrl() { return url; }
+        public Web3j getWeb3j() { return web3j; }
+        public synchronized double getLatencyMillis() { return latencyMillis; }
+        public synchronized double getErrorRate() { return errorRate; }
+
+        public synchronized boolean isHealthy(long now) {
+            return now >= ejectedUntil;
+        }
+
+        synchronized double score() {
+            return (latencyMillis == 0 ? DEFAULT_LATENCY_MILLIS : latencyMillis) * (1 + 10 * errorRate);
+        }
+
+        synchronized void recordSuccess(double millis) {
+            latencyMillis = latencyMillis == 0 ? millis : ALPHA * millis + (1 - ALPHA) * latencyMillis;
+            errorRate = (1 - ALPHA) * errorRate;
+            consecutiveFailures = 0;
+            ejectedUntil = 0;
+        }
+
+        /**
+         * @return true if this failure got the endpoint ejected
+         */
+        synchronized boolean recordFailure() {
+            errorRate = ALPHA + (1 - ALPHA) * errorRate;
+            var now = System.currentTimeMillis();
+            if (++consecutiveFailures >= EJECT_AFTER_FAILURES && now >= ejectedUntil) {
+                ejectedUntil = now + EJECT_MILLIS;
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return url + " (" + Math.round(getLatencyMillis()) + "ms, " + Math.round(100 * getErrorRate()) + "% errors)";
+        }
+    }
+
+    private final String rpcId;
+    private final List<Endpoint> endpoints;
+    private final ScheduledFuture<?> probeTask;
+
+    public RpcEndpointPool(String rpcId, List<String> urls, Function<String, Web3j> clientFactory) {
+        if (urls.isEmpty()) {
+            throw new IllegalArgumentException("no urls for rpc id " + rpcId);
+        }
+        this.rpcId = rpcId;
+        this.endpoints = urls.stream().map(url -> new Endpoint(url, clientFactory.apply(url))).toList();
+        this.probeTask = endpoints.size() > 1
+                ? prober.scheduleWithFixedDelay(this::probeEndpoints, PROBE_INTERVAL_MILLIS, PROBE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)
+                : null;
+    }
+
+    public List<Endpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    /**
+     * @return the healthy endpoints best first, followed by the ejected ones as a last resort
+     */
+    public List<Endpoint> ranked() {
+        var now = System.currentTimeMillis();
+        return endpoints.stream()
+                .sorted(Comparator.comparing((Endpoint e) -> !e.isHealthy(now)).thenComparingDouble(Endpoint::score))
+                .toList();
+    }
+
+    /**
+     * Make a call on the best endpoint, failing over to the others in turn
+     * @throws IOException the last failure if every endpoint failed
+     */
+    public <T> T execute(ThrowingFunction<Web3j, T> call) throws Exception {
+        IOException lastFailure = null;
+
+        for (var endpoint : ranked()) {
+            var start = System.nanoTime();
+            try {
+                var result = call.apply(endpoint.getWeb3j());
+                if (isRateLimited(result)) {
+                    throw new IOException("rate limited by " + endpoint.getUrl());
+                }
+                endpoint.recordSuccess((System.nanoTime() - start) / 1e6);
+                return result;
+            } catch (IOException e) {
+                lastFailure = e;
+                if (endpoint.recordFailure()) {
+                    logger.warn(rpcId + " endpoint ejected after repeated failures: " + endpoint);
+                }
+                logger.warn(rpcId + " call to " + endpoint.getUrl() + " failed, failing over: " + e.getMessage());
+            }
+        }
+
+        throw lastFailure;
+    }
+
+    private static boolean isRateLimited(Object result) {
+        if (result instanceof Response<?> response) {
+            return isRateLimited(response);
+        }
+        if (result instanceof BatchResponse batchResponse) {
+            return batchResponse.getResponses().stream().anyMatch(RpcEndpointPool::isRateLimited);
+        }
+        return false;
+    }
+
+    private static boolean isRateLimited(Response<?> response) {
+        if (!response.hasError()) {
+            return false;
+        }
+        var error = response.getError();
+        var message = error.getMessage() == null ? "" : error.getMessage().toLowerCase();
+        // -32005 is the de facto "limit exceeded" code, others only say so in the message. Some providers also use it
+        // for an eth_getLogs range that is too large, which is the caller's to split rather than a reason to fail over
+        if (CachedWeb3.isRangeTooLarge(error.getMessage())) {
+            return false;
+        }
+        return error.getCode() == -32005 || error.getCode() == 429 || message.contains("rate limit") || message.contains("too many requests");
+    }
+
+    private void probeEndpoints() {
+        var now = System.currentTimeMillis();
+        for (var endpoint : endpoints) {
+            // an endpoint that has not answered yet is probed too, to measure it against DEFAULT_LATENCY_MILLIS
+            var ejected = !endpoint.isHealthy(now);
+            if (!ejected && endpoint.getLatencyMillis() > 0) {
+                continue;
+            }
+            var start = System.nanoTime();
+            try {
+                endpoint.getWeb3j().ethBlockNumber().send().getBlockNumber();
+                endpoint.recordSuccess((System.nanoTime() - start) / 1e6);
+                if (ejected) {
+                    logger.info(rpcId + " endpoint back in rotation: " + endpoint);
+                }
+            } catch (Exception e) {
+                logger.debug(rpcId + " endpoint probe failed: " + endpoint.getUrl());
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (probeTask != null) {
+            probeTask.cancel(false);
+        }
+        endpoints.forEach(endpoint -> endpoint.getWeb3j().shutdown());
+    }
+}
@@ -0,0 +1,203 @@
+package com.pshdev0.reddy;
+
+import redis.clients.jedis.HostAndPort;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiFunction;
+
+/**
+ * Spreads keys over several backends, typically standalone Redis nodes, by consistent hashing: each shard owns
+ * VIRTUAL_NODES points on a hash ring, and a key belongs to the first point at or after its hash. Adding or removing a
+ * shard only moves the keys of that shard's points. Shards are placed on the ring by name, so the order they are
+ * given in does not matter.
+ *
+ * As in Redis Cluster, a key with a hash tag (the part between the first { and the next }, if not empty) is placed by
+ * its tag alone, see Network.setKeyHashTag. Batched reads and writes are split per shard and the shards are called in
+ * parallel.
+ */
+public class ShardedCacheBackend implements CacheBackend {
+
+    public static final int VIRTUAL_NODES = 160;
+
+    private final List<String> names;
+    private final List<CacheBackend> shards;
+    // ring points in ascending order, and the index of the shard owning each
+    private final long[] points;
+    private final int[] owners;
+
+    /**
+     * @param shards backends by name, e.g. host:port
+     */
+    public ShardedCacheBackend(Map<String, ? extends CacheBackend> shards) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("at least one shard is required");
+        }
+        this.names = List.copyOf(shards.keySet());
+        this.shards = List.copyOf(shards.values());
+
+        var ring = new long[names.size() * VIRTUAL_NODES][];
+        for (int shard = 0; shard < names.size(); shard++) {
+            for (int i = 0; i < VIRTUAL_NODES; i++) {
+                var point = Utils.hash64((names.get(shard) + "#" + i).getBytes(StandardCharsets.UTF_8));
+                ring[shard * VIRTUAL_NODES + i] = new long[] {point, shard};
+            }
+        }
+        Arrays.sort(ring, (a, b) -> Long.compare(a[0], b[0]));
+        this.points = new long[ring.length];
+        this.owners = new int[ring.length];
+        for (int i = 0; i < ring.length; i++) {
+            points[i] = ring[i][0];
+            owners[i] = (int) ring[i][1];
+        }
+    }
+
+    /**
+     * Shard over standalone Redis nodes, each with a RedisCacheBackend of the default pool size and timeouts
+     */
+    public ShardedCacheBackend(List<HostAndPort> redisNodes) {
+        this(createRedisShards(redisNodes));
+    }
+
+    private static Map<String, CacheBackend> createRedisShards(List<HostAndPort> redisNodes) {
+        var shards = new LinkedHashMap<String, CacheBackend>();
+        for (var node : redisNodes) {
+            shards.put(node.toString(), new RedisCacheBackend(node.getHost(), node.getPort()));
+        }
+        return shards;
+    }
+
+    public List<CacheBackend> getShards() {
+        return shards;
+    }
+
+    /**
+     * @return the name of the shard key is stored on
+     */
+    public String getShardName(String key) {
+        return names.get(shardOf(key));
+    }
+
+    @Override
+    public byte[] get(String key) {
+        return shards.get(shardOf(key)).get(key);
+    }
+
+    @Override
+    public void set(String key, byte[] value, long ttlMillis) {
+        shards.get(shardOf(key)).set(key, value, ttlMillis);
+    }
+
+    @Override
+    public boolean setIfAbsent(String key, String value, long ttlMillis) {
+        return shards.get(shardOf(key)).setIfAbsent(key, value, ttlMillis);
+    }
+
+    @Override
+    public List<byte[]> mget(List<String> keys) {
+        var positions = new HashMap<Integer, List<Integer>>();
+        for (int i = 0; i < keys.size(); i++) {
+            positions.computeIfAbsent(shardOf(keys.get(i)), shard -> new ArrayList<>()).add(i);
+        }
+
+        var values = new ArrayList<byte[]>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            values.add(null);
+        }
+        var results = forEachShard(positions, (shard, shardPositions) -> shards.get(shard).mget(shardPositions.stream().map(keys::get).toList()));
+        results.forEach((shard, shardValues) -> {
+            var shardPositions = positions.get(shard);
+            for (int i = 0; i < shardPositions.size(); i++) {
+                values.set(shardPositions.get(i), shardValues.get(i));
+            }
+        });
+        return values;
+    }
+
+    @Override
+    public void mset(Map<String, byte[]> values, long ttlMillis) {
+        var byShard = new HashMap<Integer, Map<String, byte[]>>();
+        values.forEach((key, value) -> byShard.computeIfAbsent(shardOf(key), shard -> new HashMap<>()).put(key, value));
+        forEachShard(byShard, (shard, shardValues) -> {
+            shards.get(shard).mset(shardValues, ttlMillis);
+            return null;
+        });
+    }
+
+    @Override
+    public void del(String key) {
+        shards.get(shardOf(key)).del(key);
+    }
+
+    @Override
+    public boolean delIfEquals(String key, String value) {
+        return shards.get(shardOf(key)).delIfEquals(key, value);
+    }
+
+    @Override
+    public void forEach(String keyPrefix, EntryVisitor visitor) throws Exception {
+        for (var shard : shards) {
+            shard.forEach(keyPrefix, visitor);
+        }
+    }
+
+    @Override
+    public void close() {
+        shards.forEach(CacheBackend::close);
+    }
+
+    /**
+     * Run call for each shard's part of a batch, the shards in parallel if there are several
+     * @return each shard's result
+     */
+    private <T, R> Map<Integer, R> forEachShard(Map<Integer, T> parts, BiFunction<Integer, T, R> call) {
+        var results = new HashMap<Integer, R>();
+        if (parts.size() == 1) {
+            var part = parts.entrySet().iterator().next();
+            results.put(part.getKey(), call.apply(part.getKey(), part.getValue()));
+            return results;
+        }
+
+        var futures = new HashMap<Integer, CompletableFuture<R>>();
+        parts.forEach((shard, part) -> futures.put(shard, CompletableFuture.supplyAsync(() -> call.apply(shard, part), Network.getAsyncExecutor())));
+        try {
+            futures.forEach((shard, future) -> results.put(shard, future.join()));
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+        return results;
+    }
+
+    private int shardOf(String key) {
+        var hash = Utils.hash64(hashTag(key).getBytes(StandardCharsets.UTF_8));
+        var i = Arrays.binarySearch(points, hash);
+        if (i < 0) {
+            i = -i - 1;
+        }
+        return owners[i == points.length ? 0 : i];
+    }
+
+    /**
+     * @return the part of key that decides its shard: its hash tag if it has one, else all of it
+     */
+    static String hashTag(String key) {
+        var start = key.indexOf('{');
+        if (start >= 0) {
+            var end = key.indexOf('}', start + 1);
+            if (end > start + 1) {
+                return key.substring(start + 1, end);
+            }
+        }
+        return key;
+    }
+}
@@ -0,0 +1,6 @@
+package com.pshdev0.reddy;
+
+@FunctionalInterface
+public interface ThrowingFunction<A, R> {
+    R apply(A a) throws Exception;
+}
@@ -1,11 +1,8 @@
 package com.pshdev0.reddy;
 
 import org.bouncycastle.jcajce.provider.digest.Keccak;
-import org.bouncycastle.jce.provider.BouncyCastleProvider;
 
 import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.Security;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
@@ -13,23 +10,35 @@ import java.time.format.DateTimeFormatter;
 
 public class Utils {
 
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
     public static String getKeccak256Hash(String signature) {
-        Security.addProvider(new BouncyCastleProvider());
-        MessageDigest digest = new Keccak.Digest256();
-        byte[] encodedhash = digest.digest(signature.getBytes(StandardCharsets.UTF_8));
-        return bytesToHex(encodedhash);
+        // a digest is cheap to create, whereas a ThreadLocal one would be created and kept for every virtual thread
+        return bytesToHex(new Keccak.Digest256().digest(signature.getBytes(StandardCharsets.UTF_8)));
     }
 
-    private static String bytesToHex(byte[] hash) {
-        StringBuilder hexString = new StringBuilder(2 * hash.length);
-        for (byte b : hash) {
-            String hex = Integer.toHexString(0xff & b);
-            if (hex.length() == 1) {
-                hexString.append('0');
-            }
-            hexString.append(hex);
+    public static String bytesToHex(byte[] bytes) {
+        var hex = new char[2 * bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            hex[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * Fast 64-bit hash for spreading keys over hash tables and shards (FNV-1a with a final avalanche), not a digest
+     */
+    public static long hash64(byte[] bytes) {
+        var hash = 0xcbf29ce484222325L;
+        for (var b : bytes) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
         }
-        return hexString.toString();
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
     }
 
     public static Long convertToEpochMillis(String localDateTimeString) {
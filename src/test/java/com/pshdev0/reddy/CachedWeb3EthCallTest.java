@@ -0,0 +1,235 @@
+package com.pshdev0.reddy;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.web3j.abi.FunctionEncoder;
+import org.web3j.abi.TypeReference;
+import org.web3j.abi.datatypes.Address;
+import org.web3j.abi.datatypes.Function;
+import org.web3j.abi.datatypes.Type;
+import org.web3j.abi.datatypes.generated.Uint256;
+import org.web3j.utils.Numeric;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * ethCall, ethCalls and token balances against a stand-in node that runs Multicall3's aggregate3 itself. A holder's
+ * balance on TOKEN is its address as a number, every call to REVERTER reverts and every call to RATE_LIMITED is
+ * refused.
+ */
+class CachedWeb3EthCallTest {
+
+    private static final String MULTICALL = "0x00000000000000000000000000000000000000ca";
+    private static final String TOKEN = "0x000000000000000000000000000000000000000a";
+    private static final String REVERTER = "0x000000000000000000000000000000000000000b";
+    private static final String RATE_LIMITED = "0x000000000000000000000000000000000000000c";
+    private static final String NO_CODE = "0x000000000000000000000000000000000000000d";
+    private static final BigInteger BLOCK = BigInteger.valueOf(1_000);
+    private static final AtomicInteger rpcIds = new AtomicInteger();
+
+    @TempDir
+    Path cacheDirectory;
+
+    private StubRpcNode node;
+    private String rpcId;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        node = new StubRpcNode();
+        node.on("eth_call", params -> call(params.get(0).get("to").asText(), params.get(0).get("data").asText()));
+
+        // a new rpcId per test, so no Web3j client or cache entry is shared between tests
+        rpcId = "ethCallTest" + rpcIds.incrementAndGet();
+        CachedWeb3.addArchiveNodes(Map.of(rpcId, node.getUrl()));
+        CachedWeb3.setMulticallAddress(rpcId, MULTICALL);
+        Network.setCacheBackend(new DiskCacheBackend(cacheDirectory));
+    }
+
+    @AfterEach
+    void tearDown() {
+        Network.setCacheBackend(null);
+        Network.disableNegativeCache("ethCall");
+        Network.setRetryPolicy(RetryPolicy.DEFAULT);
+        CachedWeb3.setMulticallBatchSize(500);
+        node.close();
+    }
+
+    @Test
+    void batchesCallsIntoAggregate3AndCachesEachResult() {
+        CachedWeb3.setMulticallBatchSize(2);
+        var calls = new ArrayList<CachedWeb3.ContractCall>();
+        for (int holder = 1; holder <= 5; holder++) {
+            calls.add(balanceOf(TOKEN, holder));
+        }
+
+        var results = CachedWeb3.ethCalls(rpcId, null, calls, BLOCK);
+        assertEquals(3, node.getCalls("eth_call"));
+        for (int holder = 1; holder <= 5; holder++) {
+            assertEquals(BigInteger.valueOf(holder), value(results.get(holder - 1)));
+        }
+
+        // every result is cached under the key a single ethCall uses
+        CachedWeb3.ethCalls(rpcId, null, calls, BLOCK);
+        assertEquals(BigInteger.valueOf(4), value(CachedWeb3.ethCall(rpcId, null, calls.get(3), BLOCK)));
+        assertEquals(3, node.getCalls("eth_call"));
+    }
+
+    @Test
+    void revertInsideAggregate3IsNullAndNegativelyCached() {
+        CachedWeb3.enableNegativeCache(60_000);
+        var calls = List.of(balanceOf(TOKEN, 1), balanceOf(REVERTER, 2), balanceOf(TOKEN, 3));
+
+        var results = CachedWeb3.ethCalls(rpcId, null, calls, BLOCK);
+        assertEquals(1, node.getCalls("eth_call"));
+        assertEquals(BigInteger.ONE, value(results.get(0)));
+        assertNull(results.get(1));
+        assertEquals(BigInteger.valueOf(3), value(results.get(2)));
+
+        assertNull(CachedWeb3.ethCall(rpcId, null, calls.get(1), BLOCK));
+        assertEquals(1, node.getCalls("eth_call"));
+    }
+
+    @Test
+    void withoutMulticall3CallsAreMadeOneByOne() {
+        CachedWeb3.setMulticallAddress(rpcId, NO_CODE);
+        var calls = List.of(balanceOf(TOKEN, 1), balanceOf(REVERTER, 2), balanceOf(TOKEN, 3));
+
+        var results = CachedWeb3.ethCalls(rpcId, null, calls, BLOCK);
+        assertEquals(1 + calls.size(), node.getCalls("eth_call"));
+        assertEquals(BigInteger.ONE, value(results.get(0)));
+        assertNull(results.get(1));
+        assertEquals(BigInteger.valueOf(3), value(results.get(2)));
+    }
+
+    @Test
+    void nodeErrorsAreRetriedAndNeverCachedAsReverts() {
+        CachedWeb3.enableNegativeCache(60_000);
+        Network.setRetryPolicy(RetryPolicy.DEFAULT.withMaxAttempts(2).withBackoff(1, 1, 1.0));
+        var call = balanceOf(RATE_LIMITED, 1);
+
+        assertNull(CachedWeb3.ethCall(rpcId, null, call, BLOCK));
+        assertEquals(2, node.getCalls("eth_call"));
+        assertNull(CachedWeb3.ethCall(rpcId, null, call, BLOCK));
+        assertEquals(4, node.getCalls("eth_call"));
+    }
+
+    @Test
+    void tokenBalancesAreCachedUnderTheSingleBalanceKey() {
+        // getTokenIntegerBalance calls balanceOf(tokenAddress) on walletAddress
+        var holder = Numeric.toHexStringWithPrefixZeroPadded(BigInteger.valueOf(5), 40);
+        var queries = List.of(new CachedWeb3.TokenBalanceQuery(TOKEN, holder), new CachedWeb3.TokenBalanceQuery(" ", holder));
+
+        var balances = CachedWeb3.getTokenIntegerBalances(rpcId, null, queries, BLOCK);
+        assertEquals(Arrays.asList(BigInteger.valueOf(5), null), balances);
+        assertEquals(1, node.getCalls("eth_call"));
+
+        assertEquals(BigInteger.valueOf(5), CachedWeb3.getTokenIntegerBalance(rpcId, null, TOKEN, holder, BLOCK));
+        assertEquals(1, node.getCalls("eth_call"));
+    }
+
+    @Test
+    void tokenBalancesRejectInvalidAddresses() {
+        assertThrows(IllegalArgumentException.class, () -> CachedWeb3.getTokenIntegerBalances(rpcId, null,
+                List.of(new CachedWeb3.TokenBalanceQuery(TOKEN, null)), BLOCK));
+        assertThrows(IllegalArgumentException.class, () -> CachedWeb3.getTokenIntegerBalances(rpcId, null,
+                List.of(new CachedWeb3.TokenBalanceQuery("0x1234", TOKEN)), BLOCK));
+        assertEquals(0, node.getCalls("eth_call"));
+    }
+
+    private static CachedWeb3.ContractCall balanceOf(String contract, long holder) {
+        var function = new Function("balanceOf", List.of(new Address(BigInteger.valueOf(holder))), List.of(new TypeReference<Uint256>() {}));
+        return new CachedWeb3.ContractCall(contract, function);
+    }
+
+    private static BigInteger value(List<Type<?>> output) {
+        return ((Uint256) output.get(0)).getValue();
+    }
+
+    /**
+     * What the stand-in node returns for an eth_call of data on to
+     */
+    private static String call(String to, String data) throws StubRpcNode.RpcError {
+        switch (to.toLowerCase()) {
+            case MULTICALL -> {
+                return aggregate3(data);
+            }
+            case TOKEN -> {
+                // balanceOf(address): the address is the last 20 bytes of the calldata
+                var selector = FunctionEncoder.encode(balanceOf(TOKEN, 0).function()).substring(0, 10);
+                if (!data.startsWith(selector)) {
+                    throw new StubRpcNode.RpcError(3, "execution reverted");
+                }
+                return Numeric.toHexStringWithPrefixZeroPadded(Numeric.toBigInt(data.substring(data.length() - 40)), 64);
+            }
+            case REVERTER -> throw new StubRpcNode.RpcError(3, "execution reverted");
+            case RATE_LIMITED -> throw new StubRpcNode.RpcError(-32005, "limit exceeded");
+            default -> {
+                // no contract at the address
+                return "0x";
+            }
+        }
+    }
+
+    /**
+     * Run the (address target, bool allowFailure, bytes callData)[] of an aggregate3 call and encode the
+     * (bool success, bytes returnData)[] it returns
+     */
+    private static String aggregate3(String data) throws StubRpcNode.RpcError {
+        var input = Numeric.hexStringToByteArray(data.substring(10));
+        var arrayStart = word(input, 0).intValueExact();
+        var length = word(input, arrayStart).intValueExact();
+        var contentStart = arrayStart + 32;
+
+        var tuples = new ArrayList<byte[]>();
+        for (int i = 0; i < length; i++) {
+            var tupleStart = contentStart + word(input, contentStart + i * 32).intValueExact();
+            var target = Numeric.toHexStringWithPrefixZeroPadded(word(input, tupleStart), 40);
+            var bytesStart = tupleStart + word(input, tupleStart + 64).intValueExact();
+            var callData = Arrays.copyOfRange(input, bytesStart + 32, bytesStart + 32 + word(input, bytesStart).intValueExact());
+
+            var success = true;
+            var returnData = new byte[0];
+            try {
+                returnData = Numeric.hexStringToByteArray(call(target, Numeric.toHexString(callData)));
+            } catch (StubRpcNode.RpcError e) {
+                success = false;
+            }
+            var tuple = new ByteArrayOutputStream();
+            tuple.writeBytes(Numeric.toBytesPadded(success ? BigInteger.ONE : BigInteger.ZERO, 32));
+            tuple.writeBytes(Numeric.toBytesPadded(BigInteger.valueOf(64), 32));
+            tuple.writeBytes(Numeric.toBytesPadded(BigInteger.valueOf(returnData.length), 32));
+            tuple.writeBytes(returnData);
+            tuple.writeBytes(new byte[(32 - returnData.length % 32) % 32]);
+            tuples.add(tuple.toByteArray());
+        }
+
+        var output = new ByteArrayOutputStream();
+        output.writeBytes(Numeric.toBytesPadded(BigInteger.valueOf(32), 32));
+        output.writeBytes(Numeric.toBytesPadded(BigInteger.valueOf(length), 32));
+        long offset = 32L * length;
+        for (var tuple : tuples) {
+            output.writeBytes(Numeric.toBytesPadded(BigInteger.valueOf(offset), 32));
+            offset += tuple.length;
+        }
+        tuples.forEach(output::writeBytes);
+        return Numeric.toHexString(output.toByteArray());
+    }
+
+    private static BigInteger word(byte[] data, int offset) {
+        return new BigInteger(1, Arrays.copyOfRange(data, offset, offset + 32));
+    }
+}
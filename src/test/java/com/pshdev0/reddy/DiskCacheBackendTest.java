@@ -0,0 +1,259 @@
+package com.pshdev0.reddy;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A DiskCacheBackend with small chunks, that only compacts when told to unless a test opens it otherwise
+ */
+class DiskCacheBackendTest {
+
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    @TempDir
+    Path directory;
+
+    private DiskCacheBackend backend;
+
+    @AfterEach
+    void tearDown() {
+        if (backend != null) {
+            backend.close();
+        }
+    }
+
+    @Test
+    void roundTrips() throws IOException {
+        backend = open(Long.MAX_VALUE);
+        assertNull(backend.get("a"));
+
+        backend.set("a", bytes("1"), 0);
+        backend.mset(Map.of("b", bytes("2"), "c", bytes("3")), 0);
+        assertEquals("1", string(backend.get("a")));
+        assertEquals(Arrays.asList("2", null, "3"), strings(backend.mget(List.of("b", "missing", "c"))));
+
+        backend.set("a", bytes("overwritten"), 0);
+        assertEquals("overwritten", string(backend.get("a")));
+
+        backend.del("a");
+        assertNull(backend.get("a"));
+        backend.del("a");
+
+        assertTrue(backend.setIfAbsent("lock", "token", 0));
+        assertFalse(backend.setIfAbsent("lock", "other", 0));
+        assertFalse(backend.delIfEquals("lock", "other"));
+        assertTrue(backend.delIfEquals("lock", "token"));
+        assertNull(backend.get("lock"));
+    }
+
+    @Test
+    void entriesExpire() throws Exception {
+        backend = open(Long.MAX_VALUE);
+        backend.set("short", bytes("1"), 50);
+        backend.set("forever", bytes("2"), 0);
+        assertTrue(backend.setIfAbsent("lock", "token", 50));
+
+        Thread.sleep(100);
+        assertNull(backend.get("short"));
+        assertNull(backend.getBuffer("short"));
+        assertEquals("2", string(backend.get("forever")));
+        assertTrue(backend.setIfAbsent("lock", "next", 0));
+
+        var keys = new ArrayList<String>();
+        backend.forEach("", (key, value, ttlMillis) -> keys.add(key));
+        assertEquals(List.of("forever"), keys.stream().filter(key -> !key.equals("lock")).toList());
+    }
+
+    @Test
+    void reopensAfterACleanClose() throws IOException {
+        backend = open(Long.MAX_VALUE);
+        backend.set("a", bytes("1"), 0);
+        backend.set("b", bytes("2"), 60_000);
+        backend.del("c");
+        backend.close();
+
+        backend = open(Long.MAX_VALUE);
+        assertEquals("1", string(backend.get("a")));
+        assertEquals("2", string(backend.get("b")));
+        assertNull(backend.get("c"));
+    }
+
+    @Test
+    void directoryIsUsedByOneBackendAtATime() throws IOException {
+        backend = open(Long.MAX_VALUE);
+        assertThrows(IOException.class, () -> open(Long.MAX_VALUE));
+    }
+
+    @Test
+    void rebuildsTheIndexAfterAnUncleanClose() throws IOException {
+        backend = open(Long.MAX_VALUE);
+        var expected = writeMany(2_000);
+        backend.del("key7");
+        expected.remove("key7");
+        backend.set("key8", bytes("overwritten"), 0);
+        expected.put("key8", "overwritten");
+        backend.close();
+        // without its index the directory looks like one whose backend never got to close
+        Files.delete(directory.resolve("index.idx"));
+
+        backend = open(Long.MAX_VALUE);
+        assertStored(expected);
+    }
+
+    @Test
+    void truncatesACorruptedTail() throws IOException {
+        backend = open(Long.MAX_VALUE);
+        var expected = writeMany(100);
+        backend.set("last", bytes("torn value"), 0);
+        backend.close();
+        Files.delete(directory.resolve("index.idx"));
+        flipByteOf(segmentFile(), bytes("torn value"));
+
+        backend = open(Long.MAX_VALUE);
+        assertNull(backend.get("last"));
+        assertStored(expected);
+
+        // writes go on from the end of the last good record, and survive another rebuild
+        backend.set("after", bytes("1"), 0);
+        backend.close();
+        Files.delete(directory.resolve("index.idx"));
+        backend = open(Long.MAX_VALUE);
+        assertEquals("1", string(backend.get("after")));
+        assertStored(expected);
+    }
+
+    @Test
+    void compactionKeepsLiveEntriesAndDropsDeadOnes() throws Exception {
+        backend = open(Long.MAX_VALUE);
+        var expected = writeMany(1_000);
+        for (int i = 0; i < 1_000; i += 2) {
+            backend.set("key" + i, bytes("again" + i), 0);
+            expected.put("key" + i, "again" + i);
+        }
+        for (int i = 1; i < 1_000; i += 10) {
+            backend.del("key" + i);
+            expected.remove("key" + i);
+        }
+        backend.set("expiring", bytes("1"), 50);
+        Thread.sleep(100);
+        var before = segmentFile();
+
+        backend.compact();
+        assertStored(expected);
+        assertNull(backend.get("expiring"));
+        assertFalse(Files.exists(before));
+
+        var keys = new ArrayList<String>();
+        backend.forEach("key", (key, value, ttlMillis) -> keys.add(key));
+        assertEquals(expected.size(), keys.size());
+
+        // and the compacted segment reopens as it is
+        backend.close();
+        backend = open(Long.MAX_VALUE);
+        assertStored(expected);
+    }
+
+    @Test
+    void expiredEntriesTriggerCompaction() throws Exception {
+        backend = open(1 << 20);
+        var value = new byte[1_000];
+        for (int i = 0; i < 1_000; i++) {
+            backend.set("expiring" + i, value, 50);
+        }
+        Thread.sleep(100);
+        var segment = segmentFile();
+
+        // crossing minCompactionBytes sweeps the expired entries, which are then enough garbage to compact
+        for (int i = 0; i < 100; i++) {
+            backend.set("live" + i, value, 0);
+        }
+        for (int i = 0; i < 100 && Files.exists(segment); i++) {
+            Thread.sleep(50);
+        }
+        assertFalse(Files.exists(segment));
+        assertTrue(Files.size(segmentFile()) < 1 << 20);
+        assertEquals(value.length, backend.get("live0").length);
+    }
+
+    @Test
+    void bufferViewsStayValidAcrossCompaction() throws IOException {
+        backend = open(Long.MAX_VALUE);
+        backend.set("a", bytes("first"), 0);
+        var view = backend.getBuffer("a");
+
+        backend.set("a", bytes("second"), 0);
+        backend.compact();
+        backend.set("a", bytes("third"), 0);
+        backend.compact();
+
+        assertEquals("first", StandardCharsets.UTF_8.decode(view).toString());
+        assertEquals("third", string(backend.get("a")));
+    }
+
+    private DiskCacheBackend open(long minCompactionBytes) throws IOException {
+        return new DiskCacheBackend(directory, CHUNK_SIZE, minCompactionBytes);
+    }
+
+    private Map<String, String> writeMany(int count) {
+        var written = new HashMap<String, String>();
+        for (int i = 0; i < count; i++) {
+            backend.set("key" + i, bytes("value" + i), 0);
+            written.put("key" + i, "value" + i);
+        }
+        return written;
+    }
+
+    private void assertStored(Map<String, String> expected) {
+        expected.forEach((key, value) -> assertEquals(value, string(backend.get(key)), key));
+    }
+
+    private Path segmentFile() throws IOException {
+        try (var files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(".log")).findFirst().orElseThrow();
+        }
+    }
+
+    /**
+     * Flip a byte of the last occurrence of content in file, so the record holding it fails its checksum
+     */
+    private static void flipByteOf(Path file, byte[] content) throws IOException {
+        var data = Files.readAllBytes(file);
+        for (int i = data.length - content.length; i >= 0; i--) {
+            if (Arrays.equals(data, i, i + content.length, content, 0, content.length)) {
+                data[i] ^= 1;
+                Files.write(file, data);
+                return;
+            }
+        }
+        throw new IllegalStateException("no " + string(content) + " in " + file);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] value) {
+        return value == null ? null : new String(value, StandardCharsets.UTF_8);
+    }
+
+    private static List<String> strings(List<byte[]> values) {
+        return values.stream().map(DiskCacheBackendTest::string).toList();
+    }
+}
@@ -0,0 +1,98 @@
+package com.pshdev0.reddy;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.http.HttpService;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Failover and ejection of an RpcEndpointPool over two stand-in nodes, first and second, listed in that order
+ */
+class RpcEndpointPoolTest {
+
+    private static final String BLOCK_NUMBER = "eth_blockNumber";
+
+    private StubRpcNode first;
+    private StubRpcNode second;
+    private RpcEndpointPool pool;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        first = new StubRpcNode();
+        second = new StubRpcNode();
+        first.on(BLOCK_NUMBER, params -> "0x1");
+        second.on(BLOCK_NUMBER, params -> "0x2");
+        pool = new RpcEndpointPool("poolTest", List.of(first.getUrl(), second.getUrl()), url -> Web3j.build(new HttpService(url)));
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.close();
+        first.close();
+        second.close();
+    }
+
+    @Test
+    void failsOverWhenAnEndpointIsRateLimited() throws Exception {
+        rateLimit(first);
+
+        assertEquals(BigInteger.TWO, blockNumber());
+        assertEquals(1, first.getCalls(BLOCK_NUMBER));
+        assertEquals(1, second.getCalls(BLOCK_NUMBER));
+
+        // first has no latency sample, as it never answered, but its failure still ranks it behind second
+        assertEquals(second.getUrl(), pool.ranked().get(0).getUrl());
+        assertEquals(BigInteger.TWO, blockNumber());
+        assertEquals(1, first.getCalls(BLOCK_NUMBER));
+    }
+
+    @Test
+    void failsOverWhenAnEndpointIsDown() throws Exception {
+        first.close();
+
+        assertEquals(BigInteger.TWO, blockNumber());
+        assertEquals(second.getUrl(), pool.ranked().get(0).getUrl());
+    }
+
+    @Test
+    void ejectsEndpointsAfterRepeatedFailures() throws Exception {
+        rateLimit(first);
+        rateLimit(second);
+        for (int i = 0; i < RpcEndpointPool.EJECT_AFTER_FAILURES; i++) {
+            assertThrows(IOException.class, this::blockNumber);
+        }
+        var now = System.currentTimeMillis();
+        pool.getEndpoints().forEach(endpoint -> assertFalse(endpoint.isHealthy(now)));
+
+        // ejected endpoints are still tried as a last resort, and one that answers is back in rotation
+        second.on(BLOCK_NUMBER, params -> "0x2");
+        assertEquals(BigInteger.TWO, blockNumber());
+        assertTrue(pool.getEndpoints().get(1).isHealthy(System.currentTimeMillis()));
+        assertFalse(pool.getEndpoints().get(0).isHealthy(System.currentTimeMillis()));
+
+        // and the healthy endpoint now goes before the ejected one
+        var firstCalls = first.getCalls(BLOCK_NUMBER);
+        assertEquals(BigInteger.TWO, blockNumber());
+        assertEquals(firstCalls, first.getCalls(BLOCK_NUMBER));
+    }
+
+    private BigInteger blockNumber() throws Exception {
+        return pool.execute(node -> node.ethBlockNumber().send()).getBlockNumber();
+    }
+
+    private static void rateLimit(StubRpcNode node) {
+        node.on(BLOCK_NUMBER, params -> {
+            throw new StubRpcNode.RpcError(-32005, "rate limit exceeded");
+        });
+    }
+}
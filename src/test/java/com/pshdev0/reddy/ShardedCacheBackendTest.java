@@ -0,0 +1,217 @@
+package com.pshdev0.reddy;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Key placement and batching of a ShardedCacheBackend over in-memory shards named shard0, shard1, ...
+ */
+class ShardedCacheBackendTest {
+
+    private static final int KEYS = 10_000;
+
+    private final String redisKeyPrefix = Network.getRedisKeyPrefix();
+
+    @AfterEach
+    void tearDown() {
+        Network.setKeyHashTag(Network.KeyHashTag.NONE);
+        Network.setRedisKeyPrefix(redisKeyPrefix);
+    }
+
+    @Test
+    void placementDoesNotDependOnShardOrder() {
+        var shards = shards(4);
+        var reversed = new LinkedHashMap<String, MapCacheBackend>();
+        new ArrayList<>(shards.keySet()).reversed().forEach(name -> reversed.put(name, shards.get(name)));
+
+        var backend = new ShardedCacheBackend(shards);
+        var again = new ShardedCacheBackend(shards(4));
+        var backwards = new ShardedCacheBackend(reversed);
+        for (int i = 0; i < KEYS; i++) {
+            var shard = backend.getShardName("key" + i);
+            assertEquals(shard, again.getShardName("key" + i));
+            assertEquals(shard, backwards.getShardName("key" + i));
+        }
+    }
+
+    @Test
+    void keysAreSpreadEvenly() {
+        var backend = new ShardedCacheBackend(shards(4));
+        var counts = new LinkedHashMap<String, Integer>();
+        for (int i = 0; i < KEYS; i++) {
+            counts.merge(backend.getShardName("key" + i), 1, Integer::sum);
+        }
+        assertEquals(4, counts.size());
+        counts.values().forEach(count -> assertTrue(count > KEYS / 4 * 0.7 && count < KEYS / 4 * 1.3, counts.toString()));
+    }
+
+    @Test
+    void addingAShardOnlyMovesKeysToIt() {
+        var before = new ShardedCacheBackend(shards(4));
+        var after = new ShardedCacheBackend(shards(5));
+
+        var moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            var shard = after.getShardName("key" + i);
+            if (!shard.equals(before.getShardName("key" + i))) {
+                assertEquals("shard4", shard);
+                moved++;
+            }
+        }
+        // about 1/5 of the keys
+        assertTrue(moved > KEYS / 5 * 0.7 && moved < KEYS / 5 * 1.3, moved + " keys moved");
+    }
+
+    @Test
+    void keysWithTheSameHashTagShareAShard() {
+        var backend = new ShardedCacheBackend(shards(4));
+        var shard = backend.getShardName("{tag}");
+        for (int i = 0; i < 100; i++) {
+            assertEquals(shard, backend.getShardName("prefix" + i + ":{tag}:" + i));
+        }
+
+        assertEquals("tag", ShardedCacheBackend.hashTag("a:{tag}:{other}"));
+        // an empty tag, or one that is never closed, is not a tag
+        assertEquals("a:{}:b", ShardedCacheBackend.hashTag("a:{}:b"));
+        assertEquals("a:{tag", ShardedCacheBackend.hashTag("a:{tag"));
+    }
+
+    @Test
+    void batchesAreSplitPerShardAndKeepTheirOrder() {
+        var shards = shards(4);
+        var backend = new ShardedCacheBackend(shards);
+        var values = new LinkedHashMap<String, byte[]>();
+        for (int i = 0; i < 200; i++) {
+            values.put("key" + i, bytes("value" + i));
+        }
+        backend.mset(values, 0);
+        shards.forEach((name, shard) -> {
+            assertFalse(shard.values.isEmpty(), name + " is empty");
+            shard.values.keySet().forEach(key -> assertEquals(name, backend.getShardName(key)));
+        });
+
+        var keys = new ArrayList<>(values.keySet());
+        keys.add("missing");
+        Collections.shuffle(keys, new Random(1));
+        var read = backend.mget(keys);
+        assertEquals(keys.size(), read.size());
+        for (int i = 0; i < keys.size(); i++) {
+            var key = keys.get(i);
+            if (key.equals("missing")) {
+                assertNull(read.get(i));
+            }
+            else {
+                assertEquals("value" + key.substring(3), new String(read.get(i), StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    @Test
+    void networkKeysArePlacedByTheirHashTag() {
+        Network.setRedisKeyPrefix("test");
+        var backend = new ShardedCacheBackend(shards(4));
+
+        Network.setKeyHashTag(Network.KeyHashTag.NONE);
+        var key = Network.createRedisKey("source", "method", 1, "a");
+        assertEquals(key, ShardedCacheBackend.hashTag(key));
+
+        Network.setKeyHashTag(Network.KeyHashTag.SOURCE);
+        var shard = backend.getShardName(Network.createRedisKey("source", "method", 1, "a"));
+        for (int i = 0; i < 100; i++) {
+            var sourceKey = Network.createRedisKey("source", "method" + i, i, "a" + i);
+            assertEquals("source", ShardedCacheBackend.hashTag(sourceKey));
+            assertEquals(shard, backend.getShardName(sourceKey));
+        }
+
+        Network.setKeyHashTag(Network.KeyHashTag.SOURCE_METHOD);
+        shard = backend.getShardName(Network.createRedisKey("source", "method", 1, "a"));
+        for (int i = 0; i < 100; i++) {
+            var methodKey = Network.createRedisKey("source", "method", i, "a" + i);
+            assertEquals("source:method", ShardedCacheBackend.hashTag(methodKey));
+            assertEquals(shard, backend.getShardName(methodKey));
+        }
+    }
+
+    private static Map<String, MapCacheBackend> shards(int count) {
+        var shards = new LinkedHashMap<String, MapCacheBackend>();
+        for (int i = 0; i < count; i++) {
+            shards.put("shard" + i, new MapCacheBackend());
+        }
+        return shards;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A shard that keeps its values in a map, ignoring expiry
+     */
+    private static class MapCacheBackend implements CacheBackend {
+        private final Map<String, byte[]> values = new ConcurrentHashMap<>();
+
+        @Override
+        public byte[] get(String key) {
+            return values.get(key);
+        }
+
+        @Override
+        public void set(String key, byte[] value, long ttlMillis) {
+            values.put(key, value);
+        }
+
+        @Override
+        public boolean setIfAbsent(String key, String value, long ttlMillis) {
+            return values.putIfAbsent(key, bytes(value)) == null;
+        }
+
+        @Override
+        public List<byte[]> mget(List<String> keys) {
+            return keys.stream().map(values::get).toList();
+        }
+
+        @Override
+        public void mset(Map<String, byte[]> values, long ttlMillis) {
+            this.values.putAll(values);
+        }
+
+        @Override
+        public void del(String key) {
+            values.remove(key);
+        }
+
+        @Override
+        public boolean delIfEquals(String key, String value) {
+            var current = values.get(key);
+            return current != null && Arrays.equals(current, bytes(value)) && values.remove(key, current);
+        }
+
+        @Override
+        public void forEach(String keyPrefix, EntryVisitor visitor) throws Exception {
+            for (var entry : values.entrySet()) {
+                if (entry.getKey().startsWith(keyPrefix)) {
+                    visitor.visit(entry.getKey(), entry.getValue(), 0);
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.pshdev0.reddy;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A JSON-RPC node on localhost for tests. Each request is answered by the handler registered for its method, batches
+ * included, and requests are counted by method.
+ */
+class StubRpcNode implements AutoCloseable {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<String, Handler> handlers = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> calls = new ConcurrentHashMap<>();
+
+    interface Handler {
+        /**
+         * @return the result, converted to JSON with Jackson
+         * @throws RpcError to answer with a JSON-RPC error instead
+         */
+        Object handle(JsonNode params) throws RpcError;
+    }
+
+    static class RpcError extends Exception {
+        private final int code;
+
+        RpcError(int code, String message) {
+            super(message);
+            this.code = code;
+        }
+    }
+
+    StubRpcNode() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    void on(String method, Handler handler) {
+        handlers.put(method, handler);
+    }
+
+    int getCalls(String method) {
+        var count = calls.get(method);
+        return count == null ? 0 : count.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            var request = mapper.readTree(exchange.getRequestBody());
+            JsonNode response;
+            if (request.isArray()) {
+                var responses = mapper.createArrayNode();
+                request.forEach(single -> responses.add(answer(single)));
+                response = responses;
+            }
+            else {
+                response = answer(request);
+            }
+
+            var bytes = mapper.writeValueAsBytes(response);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, bytes.length);
+            exchange.getResponseBody().write(bytes);
+        }
+    }
+
+    private ObjectNode answer(JsonNode request) {
+        var method = request.get("method").asText();
+        calls.computeIfAbsent(method, m -> new AtomicInteger()).incrementAndGet();
+
+        var response = mapper.createObjectNode().put("jsonrpc", "2.0");
+        response.set("id", request.get("id"));
+        try {
+            var handler = handlers.get(method);
+            if (handler == null) {
+                throw new RpcError(-32601, "the method " + method + " does not exist");
+            }
+            response.set("result", mapper.valueToTree(handler.handle(request.get("params"))));
+        } catch (RpcError e) {
+            response.putObject("error").put("code", e.code).put("message", e.getMessage());
+        }
+        return response;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.close();
+    }
+}